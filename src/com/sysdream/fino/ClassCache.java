@@ -0,0 +1,58 @@
+package com.sysdream.fino;
+
+import java.lang.ref.SoftReference;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of values computed once per class.
+ *
+ * Classes are held weakly, so that classes of unloaded macros and dex files,
+ * and their class loaders, may be collected. Values are held softly since
+ * they usually reference the class itself, for instance through the
+ * declaring class of a <code>Field</code>, which would otherwise keep the
+ * key reachable forever; they are dropped under memory pressure and
+ * computed again on next access.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+final class ClassCache<V>
+{
+    /**
+     * Cached values, by class
+     */
+    private final WeakHashMap<Class<?>, SoftReference<V>> values
+	= new WeakHashMap<Class<?>, SoftReference<V>>();
+
+    /**
+     * Get the cached value of a class.
+     *
+     * @param c the class
+     * @return the value, or <code>null</code> if not cached or collected
+     */
+    synchronized V get
+	(final Class<?> c)
+    {
+	final SoftReference<V> r = values.get(c);
+	return (r == null) ? null : r.get();
+    }
+
+    /**
+     * Cache the value of a class, unless another one is already cached.
+     *
+     * @param c the class
+     * @param value the value
+     * @return the value already cached, or <code>null</code> if the given
+     *         one was cached
+     */
+    synchronized V putIfAbsent
+	(final Class<?> c,
+	 final V value)
+    {
+	final V existing = get(c);
+	if(existing != null)
+	    return existing;
+	values.put(c, new SoftReference<V>(value));
+	return null;
+    }
+}
@@ -0,0 +1,317 @@
+package com.sysdream.fino;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Register of entry points, addressed by integer handles.
+ *
+ * Handles are stable: releasing an entry point leaves an empty slot instead
+ * of shifting the following entries. Objects are registered by identity, so
+ * that pushing the same object twice returns the same handle.
+ *
+ * Handles are never reused, so that a handle held by a client after its
+ * object was released resolves to an empty slot instead of another
+ * object.
+ *
+ * Every registered object is indexed under the name of its class, of every
+ * superclass and of every implemented interface, so that filtering entry
+ * points by type costs as much as the size of the result.
+ *
+ * Every method is synchronized since the register is shared by the binder
+ * threads. Once closed along with its session, the register fails every
+ * further use.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class EntryPoints
+{
+    /**
+     * Registered objects, by handle
+     */
+    private final ArrayList<Object> objects = new ArrayList<Object>();
+
+    /**
+     * Handles, by registered object
+     */
+    private final IdentityHashMap<Object, Integer> handles
+	= new IdentityHashMap<Object, Integer>();
+
+    /**
+     * Handles, by type name
+     */
+    private final HashMap<String, TreeSet<Integer>> types
+	= new HashMap<String, TreeSet<Integer>>();
+
+    /**
+     * Cached type names, by concrete class, weakly so that classes of
+     * unloaded macros and dex files may be collected
+     */
+    private static final WeakHashMap<Class<?>, String[]> TYPE_NAMES
+	= new WeakHashMap<Class<?>, String[]>();
+
+    /**
+     * Whether the register was closed along with its session
+     */
+    private boolean closed = false;
+
+    /**
+     * List the names of every type an instance of a class may be cast to.
+     *
+     * @param clazz the concrete class
+     * @return class, superclass and interface names
+     */
+    static String[] typeNames
+	(final Class<?> clazz)
+    {
+	synchronized(TYPE_NAMES) {
+	    String[] result = TYPE_NAMES.get(clazz);
+	    if(result != null)
+		return result;
+	    final Set<String> names = new LinkedHashSet<String>();
+	    for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+		names.add(c.getName());
+		addInterfaces(c, names);
+	    }
+	    result = names.toArray(new String[names.size()]);
+	    TYPE_NAMES.put(clazz, result);
+	    return result;
+	}
+    }
+
+    /**
+     * Recursively add the names of implemented interfaces.
+     *
+     * @param c the class or interface
+     * @param names the name set to fill
+     */
+    private static void addInterfaces
+	(final Class<?> c,
+	 final Set<String> names)
+    {
+	for(final Class<?> i: c.getInterfaces()) {
+	    if(names.add(i.getName()))
+		addInterfaces(i, names);
+	}
+    }
+
+    /**
+     * Register an object.
+     *
+     * @param o the object
+     * @return the object handle, or -1 for <code>null</code>
+     */
+    public synchronized int add
+	(final Object o)
+    {
+	checkOpen();
+	if(o == null)
+	    return -1;
+	final Integer existing = handles.get(o);
+	if(existing != null)
+	    return existing;
+	final int handle = objects.size();
+	objects.add(o);
+	handles.put(o, handle);
+	for(final String name: typeNames(o.getClass())) {
+	    TreeSet<Integer> set = types.get(name);
+	    if(set == null) {
+		set = new TreeSet<Integer>();
+		types.put(name, set);
+	    }
+	    set.add(handle);
+	}
+	return handle;
+    }
+
+    /**
+     * Get a registered object.
+     *
+     * @param handle the object handle
+     * @return the object, or <code>null</code> if it was released
+     * @throws IndexOutOfBoundsException if the handle was never allocated
+     */
+    public synchronized Object get
+	(final int handle)
+    {
+	checkOpen();
+	return objects.get(handle);
+    }
+
+    /**
+     * Get the handle of a registered object.
+     *
+     * @param o the object
+     * @return the object handle, or -1 if it is not registered
+     */
+    public synchronized int indexOf
+	(final Object o)
+    {
+	checkOpen();
+	final Integer handle = handles.get(o);
+	return (handle == null) ? -1 : handle;
+    }
+
+    /**
+     * Check if an object is registered.
+     *
+     * @param o the object
+     * @return <code>true</code> if the object is registered
+     */
+    public synchronized boolean contains
+	(final Object o)
+    {
+	checkOpen();
+	return handles.containsKey(o);
+    }
+
+    /**
+     * Release an entry point, leaving its slot empty.
+     *
+     * @param handle the object handle
+     * @return <code>true</code> if an object was released
+     */
+    public synchronized boolean release
+	(final int handle)
+    {
+	checkOpen();
+	if(handle < 0 || handle >= objects.size())
+	    return false;
+	final Object o = objects.get(handle);
+	if(o == null)
+	    return false;
+	objects.set(handle, null);
+	handles.remove(o);
+	for(final String name: typeNames(o.getClass())) {
+	    final TreeSet<Integer> set = types.get(name);
+	    if(set != null) {
+		set.remove(handle);
+		if(set.isEmpty())
+		    types.remove(name);
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Release a registered object.
+     *
+     * @param o the object
+     * @return <code>true</code> if the object was released
+     */
+    public synchronized boolean remove
+	(final Object o)
+    {
+	return release(indexOf(o));
+    }
+
+    /**
+     * Release every entry point at once.
+     *
+     * Handles are not reused, so that stale handles resolve to empty slots.
+     */
+    public synchronized void clear
+	()
+    {
+	for(int i = 0; i < objects.size(); i++)
+	    objects.set(i, null);
+	handles.clear();
+	types.clear();
+    }
+
+    /**
+     * Release every entry point and refuse any further registration or
+     * lookup.
+     */
+    public synchronized void close
+	()
+    {
+	clear();
+	closed = true;
+    }
+
+    /**
+     * Fail if the register was closed.
+     *
+     * @throws IllegalStateException if the register was closed
+     */
+    private void checkOpen
+	()
+    {
+	if(closed)
+	    throw new IllegalStateException("Session closed");
+    }
+
+    /**
+     * Count allocated handles, including released slots.
+     *
+     * @return the number of allocated handles
+     */
+    public synchronized int size
+	()
+    {
+	checkOpen();
+	return objects.size();
+    }
+
+    /**
+     * Snapshot the register.
+     *
+     * @return registered objects by handle, <code>null</code> for released
+     *         slots
+     */
+    public synchronized Object[] toArray
+	()
+    {
+	checkOpen();
+	return objects.toArray();
+    }
+
+    /**
+     * Filter registered entry points by type.
+     *
+     * Without a class loader, types are matched by name only, which covers
+     * classes loaded by any loader, including macros. With a class loader,
+     * names are resolved from it and entry points must be instances of the
+     * resolved classes; names that cannot be resolved match nothing.
+     *
+     * @param names the type names, matched entry points are merged
+     * @param loader an optional class loader, may be <code>null</code>
+     * @return sorted handles of matching entry points
+     */
+    public synchronized int[] filter
+	(final String[] names,
+	 final ClassLoader loader)
+    {
+	checkOpen();
+	final TreeSet<Integer> result = new TreeSet<Integer>();
+	for(final String name: names) {
+	    final TreeSet<Integer> set = types.get(name);
+	    if(set == null)
+		continue;
+	    if(loader == null) {
+		result.addAll(set);
+		continue;
+	    }
+	    try {
+		final Class<?> filter = Class.forName(name, false, loader);
+		for(final Integer handle: set)
+		    if(filter.isInstance(objects.get(handle)))
+			result.add(handle);
+	    } catch (final ClassNotFoundException e) {
+	    }
+	}
+	final int[] handles = new int[result.size()];
+	final Iterator<Integer> it = result.iterator();
+	for(int i = 0; i < handles.length; i++)
+	    handles[i] = it.next();
+	return handles;
+    }
+}
@@ -0,0 +1,96 @@
+package com.sysdream.fino;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of field names to <code>Field</code> objects for every inspected
+ * class.
+ *
+ * Looking a field up by name through the raw reflection API requires walking
+ * the whole class hierarchy and scanning every declared field. The index is
+ * built once per class and then answers name lookups with a single hash
+ * probe. Fields declared by a subclass shadow fields of the same name
+ * declared by a superclass, as they do in Java source.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class FieldIndex
+{
+    /**
+     * Per-class name to field maps, not pinning inspected classes
+     */
+    private static final ClassCache<Map<String, Field>> CACHE
+	= new ClassCache<Map<String, Field>>();
+
+    /**
+     * Static access only
+     */
+    private FieldIndex
+	()
+    {
+    }
+
+    /**
+     * Get the name to field map of a class, building it on first access.
+     *
+     * Every indexed field is already made accessible.
+     *
+     * @param clazz the inspected class
+     * @return an unmodifiable-by-contract map of field names to fields
+     */
+    public static Map<String, Field> fields
+	(final Class<?> clazz)
+    {
+	Map<String, Field> result = CACHE.get(clazz);
+	if(result != null)
+	    return result;
+	result = new HashMap<String, Field>();
+	for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+	    for(final Field f: c.getDeclaredFields()) {
+		/* Most derived declaration wins */
+		if(result.containsKey(f.getName()))
+		    continue;
+		try {
+		    f.setAccessible(true);
+		}
+		catch(final SecurityException e) {
+		}
+		result.put(f.getName(), f);
+	    }
+	}
+	final Map<String, Field> previous = CACHE.putIfAbsent(clazz, result);
+	return (previous == null) ? result : previous;
+    }
+
+    /**
+     * Look a field up by name.
+     *
+     * @param clazz the inspected class
+     * @param name the field name
+     * @return the field or <code>null</code> if no such field exists
+     */
+    public static Field lookup
+	(final Class<?> clazz,
+	 final String name)
+    {
+	return fields(clazz).get(name);
+    }
+
+    /**
+     * Get the class whose fields describe an object.
+     *
+     * As for field listings, a <code>Class</code> object is inspected as the
+     * class itself so that static fields are reachable.
+     *
+     * @param o the object
+     * @return the inspected class
+     */
+    public static Class<?> classOf
+	(final Object o)
+    {
+	return (o instanceof Class<?>) ? (Class<?>)o : o.getClass();
+    }
+}
@@ -0,0 +1,315 @@
+package com.sysdream.fino;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reachability analysis from the entry points.
+ *
+ * Every object reachable from the roots is visited once, breadth first,
+ * within a node and a time budget. Visited objects are counted by class with
+ * their estimated shallow size.
+ *
+ * Retained sizes are approximated by ownership: an object is owned by the
+ * root that reaches it first; if another root reaches it later, it is moved
+ * to the shared bucket, and so are the objects first reached through it.
+ * Objects already owned below a shared object are not moved back, so this
+ * is a cheap approximation of dominator-based retained sizes, not an exact
+ * computation.
+ *
+ * When statics are walked, the class of every visited object becomes an
+ * extra root referencing its static fields.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class HeapHistogram
+    implements HeapWalker.Visitor
+{
+    /**
+     * Owner of objects reached from several roots
+     */
+    private static final int SHARED = -1;
+
+    /**
+     * Walk completed
+     */
+    static final String COMPLETE = "complete";
+
+    /**
+     * Walk stopped by the node budget
+     */
+    static final String NODE_BUDGET = "nodes";
+
+    /**
+     * Walk stopped by the time budget
+     */
+    static final String TIME_BUDGET = "time";
+
+    /**
+     * Roots, entry points first
+     */
+    private final ArrayList<Object> roots = new ArrayList<Object>();
+
+    /**
+     * Entry point handle of every root, -1 for classes
+     */
+    private final ArrayList<Integer> handles = new ArrayList<Integer>();
+
+    /**
+     * Retained bytes and objects, by root
+     */
+    private long[] retainedBytes;
+    private int[] retainedCount;
+
+    /**
+     * Visited objects and their owner
+     */
+    private final IdentityTable visited = new IdentityTable(4096, false);
+
+    /**
+     * Objects to visit
+     */
+    private final ArrayDeque<Object> queue = new ArrayDeque<Object>();
+
+    /**
+     * Instance count and shallow bytes, by class
+     */
+    private final HashMap<Class<?>, long[]> histogram
+	= new HashMap<Class<?>, long[]>();
+
+    /**
+     * Whether to walk static fields
+     */
+    private final boolean statics;
+
+    /**
+     * Owner of the object being visited
+     */
+    private int owner;
+
+    /**
+     * Total shallow bytes
+     */
+    private long total = 0;
+
+    /**
+     * Walk outcome
+     */
+    private String status = COMPLETE;
+
+    /**
+     * Walk the graph.
+     *
+     * @param entryPoints registered entry points by handle, may contain
+     *        <code>null</code> slots
+     * @param statics whether to walk static fields of visited classes
+     * @param timeBudget the time budget in milliseconds, 0 for none
+     * @param nodeBudget the maximum number of visited objects, 0 for none
+     */
+    public HeapHistogram
+	(final Object[] entryPoints,
+	 final boolean statics,
+	 final long timeBudget,
+	 final int nodeBudget)
+    {
+	this.statics = statics;
+	retainedBytes = new long[Math.max(16, entryPoints.length)];
+	retainedCount = new int[retainedBytes.length];
+	for(int i = 0; i < entryPoints.length; i++)
+	    if(entryPoints[i] != null)
+		addRoot(entryPoints[i], i);
+	final long deadline = (timeBudget > 0) ?
+	    System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+	int nodes = 0;
+	while(!queue.isEmpty()) {
+	    if(nodeBudget > 0 && nodes >= nodeBudget) {
+		status = NODE_BUDGET;
+		break;
+	    }
+	    /* Checking time is not free, only do it once in a while */
+	    if((nodes & 0x3FF) == 0 && System.nanoTime() > deadline) {
+		status = TIME_BUDGET;
+		break;
+	    }
+	    final Object o = queue.poll();
+	    owner = visited.getValue(visited.slot(o));
+	    nodes++;
+	    if(statics && !(o instanceof Class<?>)
+	       && visited.slot(o.getClass()) < 0)
+		addRoot(o.getClass(), -1);
+	    HeapWalker.references(o, statics, this);
+	}
+	queue.clear();
+    }
+
+    /**
+     * Register a root and queue it.
+     *
+     * @param o the root object
+     * @param handle the entry point handle, -1 for classes
+     */
+    private void addRoot
+	(final Object o,
+	 final int handle)
+    {
+	final int slot = visited.insert(o);
+	if(slot < 0)
+	    return;
+	final int index = roots.size();
+	roots.add(o);
+	handles.add(handle);
+	if(index >= retainedBytes.length) {
+	    final long[] bytes = new long[index * 2];
+	    final int[] count = new int[index * 2];
+	    System.arraycopy(retainedBytes, 0, bytes, 0, index);
+	    System.arraycopy(retainedCount, 0, count, 0, index);
+	    retainedBytes = bytes;
+	    retainedCount = count;
+	}
+	visited.setValue(slot, index);
+	retainedBytes[index] += count(o);
+	retainedCount[index]++;
+	queue.add(o);
+    }
+
+    /**
+     * Count an object in the histogram.
+     *
+     * @param o the object
+     * @return the object shallow size
+     */
+    private long count
+	(final Object o)
+    {
+	final long size = HeapWalker.shallowSize(o);
+	long[] entry = histogram.get(o.getClass());
+	if(entry == null) {
+	    entry = new long[2];
+	    histogram.put(o.getClass(), entry);
+	}
+	entry[0]++;
+	entry[1] += size;
+	total += size;
+	return size;
+    }
+
+    /**
+     * @see HeapWalker.Visitor.edge
+     */
+    public boolean edge
+	(final Object from,
+	 final Object to,
+	 final int kind,
+	 final int index)
+    {
+	if(HeapWalker.isInternal(to))
+	    return true;
+	final int slot = visited.insert(to);
+	if(slot >= 0) {
+	    visited.setValue(slot, owner);
+	    final long size = count(to);
+	    if(owner != SHARED) {
+		retainedBytes[owner] += size;
+		retainedCount[owner]++;
+	    }
+	    queue.add(to);
+	    return true;
+	}
+	/* Already visited: reached from another root, unless it is a root */
+	final int s = -(slot + 1);
+	final int previous = visited.getValue(s);
+	if(previous != SHARED && previous != owner
+	   && roots.get(previous) != to) {
+	    retainedBytes[previous] -= HeapWalker.shallowSize(to);
+	    retainedCount[previous]--;
+	    visited.setValue(s, SHARED);
+	}
+	return true;
+    }
+
+    /**
+     * Describe the walk outcome.
+     *
+     * @return "<objects>:<bytes>:<status>"
+     */
+    private String summary
+	()
+    {
+	return visited.size() + InspectionStub.SEPARATOR + total
+	    + InspectionStub.SEPARATOR + status;
+    }
+
+    /**
+     * List classes by decreasing shallow size.
+     *
+     * @return the summary followed by "<class>:<count>:<bytes>" rows
+     */
+    public String[] getHistogram
+	()
+    {
+	final ArrayList<Map.Entry<Class<?>, long[]>> entries
+	    = new ArrayList<Map.Entry<Class<?>, long[]>>(histogram.entrySet());
+	Collections.sort(entries, new Comparator<Map.Entry<Class<?>, long[]>>() {
+		public int compare
+		    (final Map.Entry<Class<?>, long[]> a,
+		     final Map.Entry<Class<?>, long[]> b)
+		{
+		    return (a.getValue()[1] < b.getValue()[1]) ? 1
+			: (a.getValue()[1] > b.getValue()[1]) ? -1 : 0;
+		}
+	    });
+	final String[] result = new String[entries.size() + 1];
+	result[0] = summary();
+	for(int i = 0; i < entries.size(); i++) {
+	    final Map.Entry<Class<?>, long[]> e = entries.get(i);
+	    result[i + 1] = e.getKey().getName()
+		+ InspectionStub.SEPARATOR + e.getValue()[0]
+		+ InspectionStub.SEPARATOR + e.getValue()[1];
+	}
+	return result;
+    }
+
+    /**
+     * List the roots retaining the most memory.
+     *
+     * @param top the maximum number of roots, negative for every root
+     * @return the summary followed by
+     *         "<handle>:<bytes>:<objects>:<root class>" rows, where handle
+     *         is -1 for class roots
+     */
+    public String[] getRetained
+	(final int top)
+    {
+	final ArrayList<Integer> order = new ArrayList<Integer>();
+	for(int i = 0; i < roots.size(); i++)
+	    order.add(i);
+	Collections.sort(order, new Comparator<Integer>() {
+		public int compare
+		    (final Integer a,
+		     final Integer b)
+		{
+		    return (retainedBytes[a] < retainedBytes[b]) ? 1
+			: (retainedBytes[a] > retainedBytes[b]) ? -1 : 0;
+		}
+	    });
+	final int n = (top < 0) ? order.size() : Math.min(top, order.size());
+	final String[] result = new String[n + 1];
+	result[0] = summary();
+	for(int i = 0; i < n; i++) {
+	    final int r = order.get(i);
+	    final Object root = roots.get(r);
+	    result[i + 1] = handles.get(r)
+		+ InspectionStub.SEPARATOR + retainedBytes[r]
+		+ InspectionStub.SEPARATOR + retainedCount[r]
+		+ InspectionStub.SEPARATOR
+		+ ((root instanceof Class<?>) ?
+		   ((Class<?>)root).getName() : root.getClass().getName());
+	}
+	return result;
+    }
+}
@@ -0,0 +1,280 @@
+package com.sysdream.fino;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+
+/**
+ * Reference enumeration for object graph walks.
+ *
+ * For every class, the reference fields and the estimated shallow size of
+ * instances are computed once and cached. Fields are identified by their
+ * index in the list returned by <code>InspectionStub.listFields</code>, so
+ * that edges found while walking can be turned into regular paths.
+ *
+ * Sizes are estimates for a 32-bit runtime: an 8-byte object header, 4-byte
+ * references, 12-byte array headers and 8-byte alignment.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class HeapWalker
+{
+    /**
+     * Edge through a field, the index is the field list index
+     */
+    static final int FIELD = 0;
+
+    /**
+     * Edge through an array item, the index is the item index
+     */
+    static final int ITEM = 1;
+
+    /**
+     * Receive graph edges.
+     */
+    interface Visitor
+    {
+	/**
+	 * Visit an edge.
+	 *
+	 * @param from the referencing object
+	 * @param to the referenced object, never <code>null</code>
+	 * @param kind <code>FIELD</code> or <code>ITEM</code>
+	 * @param index the field list index or the item index
+	 * @return <code>false</code> to stop enumerating edges
+	 */
+	boolean edge
+	    (Object from,
+	     Object to,
+	     int kind,
+	     int index);
+    }
+
+    /**
+     * Reference fields and size of a class.
+     */
+    static final class Layout
+    {
+	/**
+	 * Accessible reference fields
+	 */
+	final Field[] fields;
+
+	/**
+	 * Field list index of every reference field
+	 */
+	final int[] indices;
+
+	/**
+	 * Estimated shallow size of instances
+	 */
+	final int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fields the reference fields
+	 * @param indices the field list indices
+	 * @param size the shallow size
+	 */
+	Layout
+	    (final Field[] fields,
+	     final int[] indices,
+	     final int size)
+	{
+	    this.fields = fields;
+	    this.indices = indices;
+	    this.size = size;
+	}
+    }
+
+    /**
+     * Instance field layouts, by class, not pinning walked classes
+     */
+    private static final ClassCache<Layout> INSTANCE_LAYOUTS
+	= new ClassCache<Layout>();
+
+    /**
+     * Static field layouts, by class, not pinning walked classes
+     */
+    private static final ClassCache<Layout> STATIC_LAYOUTS
+	= new ClassCache<Layout>();
+
+    /**
+     * Static access only
+     */
+    private HeapWalker
+	()
+    {
+    }
+
+    /**
+     * Estimate the size of a field or array item.
+     *
+     * @param type the field or item type
+     * @return the size in bytes
+     */
+    static int typeSize
+	(final Class<?> type)
+    {
+	if(type == Long.TYPE || type == Double.TYPE)
+	    return 8;
+	if(type == Byte.TYPE || type == Boolean.TYPE)
+	    return 1;
+	if(type == Short.TYPE || type == Character.TYPE)
+	    return 2;
+	return 4;
+    }
+
+    /**
+     * Round a size to the object alignment.
+     *
+     * @param size the raw size
+     * @return the aligned size
+     */
+    private static long align
+	(final long size)
+    {
+	return (size + 7) & ~7L;
+    }
+
+    /**
+     * Get the layout of a class.
+     *
+     * @param clazz the class
+     * @param statics whether to describe static fields instead of instance
+     *        fields
+     * @return the layout
+     */
+    static Layout layout
+	(final Class<?> clazz,
+	 final boolean statics)
+    {
+	final ClassCache<Layout> cache =
+	    statics ? STATIC_LAYOUTS : INSTANCE_LAYOUTS;
+	Layout result = cache.get(clazz);
+	if(result != null)
+	    return result;
+	final ArrayList<Field> fields = new ArrayList<Field>();
+	final ArrayList<Integer> indices = new ArrayList<Integer>();
+	long size = 8;
+	int index = 0;
+	/* Same order as InspectionStub.listFields */
+	for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+	    for(final Field f: c.getDeclaredFields()) {
+		final int i = index++;
+		if(Modifier.isStatic(f.getModifiers()) != statics)
+		    continue;
+		size += typeSize(f.getType());
+		if(f.getType().isPrimitive())
+		    continue;
+		/* Referents are not strongly reachable */
+		if(c == Reference.class && f.getName().equals("referent"))
+		    continue;
+		try {
+		    f.setAccessible(true);
+		} catch (RuntimeException e) {
+		    /* Security or, on desktop JVMs, module restrictions */
+		    continue;
+		}
+		fields.add(f);
+		indices.add(i);
+	    }
+	    /* Static fields of superclasses belong to their own class */
+	    if(statics)
+		break;
+	}
+	final int[] idx = new int[indices.size()];
+	for(int i = 0; i < idx.length; i++)
+	    idx[i] = indices.get(i);
+	result = new Layout(fields.toArray(new Field[fields.size()]), idx,
+			    (int)align(size));
+	final Layout previous = cache.putIfAbsent(clazz, result);
+	return (previous == null) ? result : previous;
+    }
+
+    /**
+     * Estimate the shallow size of an object.
+     *
+     * @param o the object
+     * @return the size in bytes
+     */
+    static long shallowSize
+	(final Object o)
+    {
+	final Class<?> c = o.getClass();
+	if(c.isArray())
+	    return align(12L + (long)Array.getLength(o)
+			 * typeSize(c.getComponentType()));
+	return layout(c, false).size;
+    }
+
+    /**
+     * Check if an object belongs to the inspection service itself and must
+     * not be walked.
+     *
+     * @param o the object
+     * @return <code>true</code> for service objects
+     */
+    static boolean isInternal
+	(final Object o)
+    {
+	return o.getClass().getName().startsWith("com.sysdream.fino.");
+    }
+
+    /**
+     * Enumerate the outgoing references of an object.
+     *
+     * <code>Class</code> objects only reference their static fields, and
+     * only if statics are walked.
+     *
+     * @param o the object
+     * @param statics whether to walk static fields of classes
+     * @param v the edge visitor
+     * @return <code>false</code> if the visitor stopped the enumeration
+     */
+    static boolean references
+	(final Object o,
+	 final boolean statics,
+	 final Visitor v)
+    {
+	if(o instanceof Object[]) {
+	    final Object[] items = (Object[])o;
+	    for(int i = 0; i < items.length; i++) {
+		final Object item = items[i];
+		if(item != null && !v.edge(o, item, ITEM, i))
+		    return false;
+	    }
+	    return true;
+	}
+	final Class<?> c = o.getClass();
+	if(c.isArray())
+	    return true;
+	final Layout l;
+	final Object target;
+	if(o instanceof Class<?>) {
+	    if(!statics)
+		return true;
+	    l = layout((Class<?>)o, true);
+	    target = null;
+	}
+	else {
+	    l = layout(c, false);
+	    target = o;
+	}
+	for(int i = 0; i < l.fields.length; i++) {
+	    final Object to;
+	    try {
+		to = l.fields[i].get(target);
+	    } catch (Exception e) {
+		continue;
+	    }
+	    if(to != null && !v.edge(o, to, FIELD, l.indices[i]))
+		return false;
+	}
+	return true;
+    }
+}
@@ -0,0 +1,203 @@
+package com.sysdream.fino;
+
+/**
+ * Compact identity hash table for heap walks.
+ *
+ * Objects are compared by identity and stored in a flat open addressing
+ * table, without any per-entry allocation, so that walking a large object
+ * graph does not add much to the heap being measured. Every slot carries an
+ * <code>int</code> value and, optionally, an object link, for instance to
+ * record the parent of a node.
+ *
+ * Slots are only valid until the next insertion, which may grow the table.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+final class IdentityTable
+{
+    /**
+     * Keys, <code>null</code> for free slots
+     */
+    private Object[] keys;
+
+    /**
+     * Values, by slot
+     */
+    private int[] values;
+
+    /**
+     * Links, by slot, <code>null</code> if links are disabled
+     */
+    private Object[] links;
+
+    /**
+     * Number of keys
+     */
+    private int size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the expected number of keys
+     * @param withLinks whether to allocate object links
+     */
+    IdentityTable
+	(final int capacity,
+	 final boolean withLinks)
+    {
+	int n = 16;
+	while(n < capacity * 2)
+	    n <<= 1;
+	keys = new Object[n];
+	values = new int[n];
+	links = withLinks ? new Object[n] : null;
+    }
+
+    /**
+     * Get the first candidate slot of a key.
+     *
+     * @param key the key
+     * @param length the table length, a power of two
+     * @return the slot
+     */
+    private static int hash
+	(final Object key,
+	 final int length)
+    {
+	final int h = System.identityHashCode(key);
+	/* Spread the identity hash, which is often aligned */
+	return (h ^ (h >>> 16) ^ (h >>> 7)) & (length - 1);
+    }
+
+    /**
+     * Count keys.
+     *
+     * @return the number of keys
+     */
+    int size
+	()
+    {
+	return size;
+    }
+
+    /**
+     * Find the slot of a key.
+     *
+     * @param key the key
+     * @return the slot or -1 if absent
+     */
+    int slot
+	(final Object key)
+    {
+	final int mask = keys.length - 1;
+	for(int i = hash(key, keys.length); ; i = (i + 1) & mask) {
+	    final Object k = keys[i];
+	    if(k == null)
+		return -1;
+	    if(k == key)
+		return i;
+	}
+    }
+
+    /**
+     * Insert a key if absent.
+     *
+     * @param key the key
+     * @return the slot of a new key, or <code>-(slot + 1)</code> if the key
+     *         was already present
+     */
+    int insert
+	(final Object key)
+    {
+	if(2 * (size + 1) > keys.length)
+	    grow();
+	final int mask = keys.length - 1;
+	for(int i = hash(key, keys.length); ; i = (i + 1) & mask) {
+	    final Object k = keys[i];
+	    if(k == key)
+		return -(i + 1);
+	    if(k == null) {
+		keys[i] = key;
+		size++;
+		return i;
+	    }
+	}
+    }
+
+    /**
+     * Double the table length.
+     */
+    private void grow
+	()
+    {
+	final Object[] oldKeys = keys;
+	final int[] oldValues = values;
+	final Object[] oldLinks = links;
+	keys = new Object[oldKeys.length * 2];
+	values = new int[keys.length];
+	links = (oldLinks == null) ? null : new Object[keys.length];
+	final int mask = keys.length - 1;
+	for(int j = 0; j < oldKeys.length; j++) {
+	    if(oldKeys[j] == null)
+		continue;
+	    int i = hash(oldKeys[j], keys.length);
+	    while(keys[i] != null)
+		i = (i + 1) & mask;
+	    keys[i] = oldKeys[j];
+	    values[i] = oldValues[j];
+	    if(links != null)
+		links[i] = oldLinks[j];
+	}
+    }
+
+    /**
+     * Get a slot value.
+     *
+     * @param slot the slot
+     * @return the value
+     */
+    int getValue
+	(final int slot)
+    {
+	return values[slot];
+    }
+
+    /**
+     * Set a slot value.
+     *
+     * @param slot the slot
+     * @param value the value
+     */
+    void setValue
+	(final int slot,
+	 final int value)
+    {
+	values[slot] = value;
+    }
+
+    /**
+     * Get a slot link.
+     *
+     * @param slot the slot
+     * @return the link
+     */
+    Object getLink
+	(final int slot)
+    {
+	return links[slot];
+    }
+
+    /**
+     * Set a slot link.
+     *
+     * @param slot the slot
+     * @param link the link
+     */
+    void setLink
+	(final int slot,
+	 final Object link)
+    {
+	links[slot] = link;
+    }
+}
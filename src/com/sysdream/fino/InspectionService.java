@@ -1,6 +1,5 @@
 package com.sysdream.fino;
 
-import java.util.ArrayList;
 import java.io.File;
 
 import android.app.Service;
@@ -24,9 +23,49 @@ public class InspectionService
     extends Service
 {
     /**
-     * Entry points list
+     * Entry points register shared by clients without a session
      */
-    private ArrayList<Object> entryPoints = new ArrayList<Object>();
+    private EntryPoints entryPoints = new EntryPoints();
+
+    /**
+     * Registers of every session, sharing the discovered roots
+     */
+    private Sessions sessions = new Sessions(entryPoints);
+
+    /**
+     * Maximum number of concurrent asynchronous invocations
+     */
+    static final int JOB_THREADS = 4;
+
+    /**
+     * Maximum number of queued asynchronous invocations
+     */
+    static final int JOB_QUEUE = 32;
+
+    /**
+     * Asynchronous invocation pool, shared by every binding
+     */
+    private Jobs jobs = new Jobs(JOB_THREADS, JOB_QUEUE);
+
+    /**
+     * Transaction recorder, shared by every binding
+     */
+    private Recorder recorder = new Recorder();
+
+    /**
+     * Sampling profiler, shared by every binding
+     */
+    private Profiler profiler = new Profiler();
+
+    /**
+     * Activity lifecycle timeline, shared by every binding
+     */
+    private LifecycleTimeline timeline = new LifecycleTimeline();
+
+    /**
+     * Main looper monitor, shared by every binding
+     */
+    private LooperMonitor monitor = new LooperMonitor();
 
 
     /**
@@ -55,16 +94,9 @@ public class InspectionService
     }
 
     /*
-     * Add the default entry points to the list
+     * Add the default entry points to every register
      */
-    if(!entryPoints.contains(true)) {
-        /*
-        entryPoints.add(false);
-        entryPoints.add(true);
-        entryPoints.add("Hello, world!");
-        */
-        entryPoints.add(this.getApplication());
-    }
+    sessions.addRoot(this.getApplication());
 	/*
 	 * Register the ActivityLifecycleCallback for entry points automatic
 	 * discovery.
@@ -75,69 +107,91 @@ public class InspectionService
 		    /**
 		     * Whenever an activity is resumed, check if it is
 		     * already registered. If not, add it to the register.
+		     * The event is recorded in the timeline first.
 		     */
 		    public void onActivityResumed
 			(final Activity activity)
 		    {
-			if(!InspectionService.this.entryPoints.contains
-			   (activity))
-			    InspectionService.this.entryPoints.add(activity);
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.RESUMED, activity);
+			InspectionService.this.sessions.addRoot(activity);
 		    }
 
 		    /**
-		     * Whenever an activity is destroyed, try to remove it from
-		     * the register in order to avoid null pointer exceptions.
+		     * Whenever an activity is destroyed, release it from every
+		     * register so that it may be garbage collected.
 		     */
 		    public void onActivityDestroyed
 			(final Activity activity)
 		    {
-			if(InspectionService.this.entryPoints.contains
-			   (activity))
-			    InspectionService.this.entryPoints.remove(activity);
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.DESTROYED, activity);
+			InspectionService.this.sessions.removeRoot(activity);
 		    }
 
 		    /**
-		     * Nil
+		     * Record the event in the timeline.
 		     */
 		    public void onActivityCreated
 			(final Activity activity,
 			 final Bundle savedInstanceState)
-		    {}
+		    {
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.CREATED, activity);
+		    }
 
 		    /**
-		     * Nil
+		     * Record the event in the timeline.
 		     */
 		    public void onActivityPaused
 			(final Activity activity)
-		    {}
+		    {
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.PAUSED, activity);
+		    }
 
 		    /**
-		     * Nil
+		     * Record the event in the timeline.
 		     */
 		    public void onActivitySaveInstanceState
 			(final Activity activity,
 			 Bundle outState)
-		    {}
+		    {
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.SAVED, activity);
+		    }
 
 		    /**
-		     * Nil
+		     * Record the event in the timeline.
 		     */
 		    public void onActivityStarted
 			(final Activity activity)
-		    {}
+		    {
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.STARTED, activity);
+		    }
 
 		    /**
-		     * Nil
+		     * Record the event in the timeline.
 		     */
 		    public void onActivityStopped
 			(final Activity activity)
-		    {}
+		    {
+			InspectionService.this.timeline.record
+			    (LifecycleTimeline.STOPPED, activity);
+		    }
 		});
     }
 
     /**
      * Bind to the service.
      *
+     * The returned interface uses the shared register: the system only calls
+     * this once per distinct intent and hands the same binder to every
+     * client binding with an equal intent, so a register created here would
+     * not isolate clients anyway. Clients that need isolated handles open a
+     * session from this interface instead.
+     *
      * @param e the binding intent
      * @return a binder instance
      */
@@ -162,6 +216,26 @@ public class InspectionService
 	 */
 	return new InspectionStub
 	    (entryPoints,
+	     sessions,
+	     jobs,
+	     recorder,
+	     profiler,
+	     timeline,
+	     monitor,
 	     getApplicationContext());
     }
+
+    /**
+     * Stop pending asynchronous invocations, recordings, profiling and
+     * looper monitoring.
+     */
+    public void onDestroy
+	()
+    {
+	jobs.shutdown();
+	recorder.stop();
+	profiler.stop();
+	monitor.stop();
+	super.onDestroy();
+    }
 }
@@ -2,14 +2,24 @@ package com.sysdream.fino;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.File;
 import java.io.FileOutputStream;
+import android.app.Activity;
 import android.content.Context;
 import android.util.Log;
 import android.util.Base64;
+import android.os.Bundle;
 import android.os.RemoteException;
+import android.os.IBinder;
+import android.os.Parcel;
 import android.os.Handler;
 import android.os.Looper;
+import android.view.View;
+import android.view.Window;
 
 import dalvik.system.DexClassLoader;
 
@@ -30,9 +40,24 @@ public class InspectionStub
     static final String SEPARATOR = ":";
 
     /**
-     * Reference to the service entry point list
+     * Reference to the entry point register of this session
      */
-    private ArrayList<Object> entryPoints;
+    private EntryPoints entryPoints;
+
+    /**
+     * Registers of every session
+     */
+    private Sessions sessions;
+
+    /**
+     * Client binder this session is tied to, if any, guarded by the stub
+     */
+    private IBinder client;
+
+    /**
+     * Death notification of the client binder, guarded by the stub
+     */
+    private IBinder.DeathRecipient death;
 
     /**
      * Dex macros storage path
@@ -49,18 +74,154 @@ public class InspectionStub
      */
     private Handler handler;
 
+    /**
+     * Asynchronous invocation pool
+     */
+    private Jobs jobs;
+
+    /**
+     * Transaction recorder, shared by every binding
+     */
+    private Recorder recorder;
+
+    /**
+     * Sampling profiler, shared by every binding
+     */
+    private Profiler profiler;
+
+    /**
+     * Activity lifecycle timeline, shared by every binding
+     */
+    private LifecycleTimeline timeline;
+
+    /**
+     * Main looper monitor, shared by every binding
+     */
+    private LooperMonitor monitor;
+
+    /**
+     * Timeout for operations run on the UI thread, in milliseconds
+     */
+    static final long UI_TIMEOUT = 5000;
+
+    /**
+     * Maximum number of retained View hierarchy captures
+     */
+    static final int MAX_CAPTURES = 8;
+
+    /**
+     * Retained View hierarchy captures, by identifier, oldest first
+     */
+    private final LinkedHashMap<Integer, ViewCapture> captures
+	= new LinkedHashMap<Integer, ViewCapture>() {
+	    protected boolean removeEldestEntry
+		(final Map.Entry<Integer, ViewCapture> eldest)
+	    {
+		return size() > MAX_CAPTURES;
+	    }
+	};
+
+    /**
+     * Last View hierarchy capture identifier
+     */
+    private int lastCapture = 0;
+
+    /**
+     * Filtered listing flag: only list members declared by the class itself
+     */
+    static final int LIST_DECLARED = 1;
+
+    /**
+     * Filtered listing flag: only list instance members
+     */
+    static final int LIST_INSTANCE = 2;
+
+    /**
+     * Filtered listing flag: only list static members
+     */
+    static final int LIST_STATIC = 4;
+
     /**
      * Constructor
      *
-     * @param entryPoints reference to the entry point list
+     * @param entryPoints reference to the entry point register
+     * @param sessions registers of every session
+     * @param jobs the asynchronous invocation pool
+     * @param recorder the transaction recorder
+     * @param profiler the sampling profiler
+     * @param timeline the activity lifecycle timeline
+     * @param monitor the main looper monitor
      */
     public InspectionStub
-	(ArrayList<Object> entryPoints,
+	(EntryPoints entryPoints,
+	 Sessions sessions,
+	 Jobs jobs,
+	 Recorder recorder,
+	 Profiler profiler,
+	 LifecycleTimeline timeline,
+	 LooperMonitor monitor,
 	 Context context)
     {
 	this.entryPoints = entryPoints;
+	this.sessions = sessions;
+	this.jobs = jobs;
+	this.recorder = recorder;
+	this.profiler = profiler;
+	this.timeline = timeline;
+	this.monitor = monitor;
 	this.context = context;
-	this.handler = new Handler();
+	/* Sessions are created from binder threads, which have no looper */
+	this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Marshall a parcel for recording.
+     *
+     * @param p the parcel, may be <code>null</code>
+     * @return the parcel contents, or <code>null</code> if it holds binder
+     *         objects
+     */
+    private static byte[] marshall
+	(final Parcel p)
+    {
+	if(p == null)
+	    return null;
+	try {
+	    return p.marshall();
+	} catch (RuntimeException e) {
+	    /* Parcels with active objects cannot be marshalled */
+	    return null;
+	}
+    }
+
+    /**
+     * Dispatch a transaction, recording it if requested.
+     *
+     * The request is marshalled before dispatching, since reading a parcel
+     * does not alter its contents but the reply is only complete after.
+     */
+    @Override
+    public boolean onTransact
+	(final int code,
+	 final Parcel data,
+	 final Parcel reply,
+	 final int flags)
+	throws RemoteException
+    {
+	if(!recorder.isActive())
+	    return super.onTransact(code, data, reply, flags);
+	final byte[] request = marshall(data);
+	byte status = Recorder.FAILED;
+	final long start = System.nanoTime();
+	try {
+	    final boolean handled = super.onTransact(code, data, reply, flags);
+	    status = handled ? Recorder.HANDLED : Recorder.UNHANDLED;
+	    return handled;
+	} finally {
+	    final long duration = System.nanoTime() - start;
+	    recorder.record(code, flags, start, duration, status, request,
+			    (status == Recorder.HANDLED) ? marshall(reply) : null);
+	}
     }
 
     /**
@@ -91,15 +252,187 @@ public class InspectionStub
      */
     public static void set
 	(Field f, Object o, Object value)
+    {
+	trySet(f, o, value);
+    }
+
+    /**
+     * Field written
+     */
+    static final int SET_OK = 0;
+
+    /**
+     * No such field
+     */
+    static final int SET_NO_FIELD = -1;
+
+    /**
+     * Value type does not match the field type
+     */
+    static final int SET_BAD_TYPE = -2;
+
+    /**
+     * Field cannot be written
+     */
+    static final int SET_DENIED = -3;
+
+    /**
+     * Value entry point does not exist
+     */
+    static final int SET_BAD_VALUE = -4;
+
+    /**
+     * Field not written because another write of the batch is invalid
+     */
+    static final int SET_SKIPPED = -5;
+
+    /**
+     * Field not written because the UI thread did not answer in time
+     */
+    static final int SET_TIMEOUT = -6;
+
+    /**
+     * Set the value of a field, reporting errors.
+     *
+     * @param f the field to set
+     * @param o the object to modify
+     * @param value the new field value
+     * @return <code>SET_OK</code> or an error status
+     */
+    static int trySet
+	(Field f, Object o, Object value)
     {
 	try {
 	    f.setAccessible(true);
 	    f.set(o, value);
+	    return SET_OK;
+	}
+	catch(final IllegalArgumentException e) {
+	    return SET_BAD_TYPE;
 	}
 	catch(final Exception e) {
+	    return SET_DENIED;
+	}
+    }
+
+    /**
+     * Check if a field may be written on an object, so that a batch of
+     * writes does not fail halfway.
+     *
+     * Final instance fields are writable once made accessible, as
+     * <code>Field.set</code> allows; static final fields are not, since
+     * their value is usually inlined by the compiler.
+     *
+     * @param f the field
+     * @param o the object to modify, ignored for static fields
+     * @return <code>false</code> for static final fields, instance fields of
+     *         another object and inaccessible fields
+     */
+    private static boolean isWritable
+	(final Field f,
+	 final Object o)
+    {
+	final int modifiers = f.getModifiers();
+	if(Modifier.isStatic(modifiers)) {
+	    if(Modifier.isFinal(modifiers))
+		return false;
+	}
+	else if(!f.getDeclaringClass().isInstance(o))
+	    return false;
+	try {
+	    f.setAccessible(true);
+	    return true;
+	} catch (RuntimeException e) {
+	    /* Security or, on desktop JVMs, module restrictions */
+	    return false;
 	}
     }
 
+    /**
+     * Numeric primitive types in widening order, as in JLS 5.1.2
+     */
+    private static final List<Class<?>> WIDENING = Arrays.<Class<?>>asList
+	(Byte.TYPE, Short.TYPE, Character.TYPE, Integer.TYPE, Long.TYPE,
+	 Float.TYPE, Double.TYPE);
+
+    /**
+     * Get the primitive type of a boxed value.
+     *
+     * @param c the boxed class
+     * @return the primitive type, or <code>null</code> if not a box
+     */
+    private static Class<?> primitiveType
+	(final Class<?> c)
+    {
+	if(c == Integer.class)
+	    return Integer.TYPE;
+	if(c == Boolean.class)
+	    return Boolean.TYPE;
+	if(c == Long.class)
+	    return Long.TYPE;
+	if(c == Float.class)
+	    return Float.TYPE;
+	if(c == Double.class)
+	    return Double.TYPE;
+	if(c == Byte.class)
+	    return Byte.TYPE;
+	if(c == Short.class)
+	    return Short.TYPE;
+	if(c == Character.class)
+	    return Character.TYPE;
+	return null;
+    }
+
+    /**
+     * Check if a value may be stored into a field of the given type.
+     *
+     * Boxed values are accepted by primitive fields of the same type or of
+     * a wider one, following the widening conversions of
+     * <code>Field.set</code>.
+     *
+     * @param type the field type
+     * @param value the value
+     * @return <code>true</code> if the value is compatible
+     */
+    private static boolean isAssignable
+	(final Class<?> type,
+	 final Object value)
+    {
+	if(!type.isPrimitive())
+	    return (value == null) || type.isInstance(value);
+	if(value == null)
+	    return false;
+	final Class<?> c = primitiveType(value.getClass());
+	if(c == type)
+	    return true;
+	if(c == null || c == Boolean.TYPE || type == Boolean.TYPE)
+	    return false;
+	/* Nothing widens to a character */
+	return (type != Character.TYPE)
+	    && WIDENING.indexOf(c) < WIDENING.indexOf(type);
+    }
+
+    /**
+     * Check a single write against the rules applied to every field write.
+     *
+     * @param f the field
+     * @param o the object to modify, ignored for static fields
+     * @param value the new value
+     * @return <code>SET_OK</code>, <code>SET_DENIED</code> or
+     *         <code>SET_BAD_TYPE</code>
+     */
+    private static int checkSet
+	(final Field f,
+	 final Object o,
+	 final Object value)
+    {
+	if(!isWritable(f, o))
+	    return SET_DENIED;
+	if(!isAssignable(f.getType(), value))
+	    return SET_BAD_TYPE;
+	return SET_OK;
+    }
+
     /**
      * Invoke method of an endpoint
      *
@@ -152,16 +485,43 @@ public class InspectionStub
 	 * If the result is null, return -1, otherwise store to the entry points
 	 * stack and return the identifier
 	 */
-	if(result != null) {
-	    entryPoints.add(result);
-	    return entryPoints.indexOf(result);
+	return entryPoints.add(result);
+    }
+
+
+    /**
+     * Run a task on the UI thread and wait for its completion.
+     *
+     * The task is run inline if the caller already is the UI thread.
+     *
+     * @param task the task to run
+     * @return <code>true</code> if the task completed before the timeout
+     */
+    public boolean runOnUiThread
+	(final Runnable task)
+    {
+	if(Looper.myLooper() == handler.getLooper()) {
+	    task.run();
+	    return true;
 	}
-	else {
-	    return -1;
+	final CountDownLatch done = new CountDownLatch(1);
+	handler.post(new Runnable(){
+		public void run() {
+		    try {
+			task.run();
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    });
+	try {
+	    return done.await(UI_TIMEOUT, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return false;
 	}
     }
 
-
     /**
      * List every field for an object type.
      *
@@ -356,13 +716,76 @@ public class InspectionStub
     private int pushObject
 	(final Object o)
     {
-	if(o == null) {
-	    return -1;
+	return entryPoints.add(o);
+    }
+
+    /**
+     * @see IInspectionService.openSession
+     */
+    public IInspectionService openSession
+	(final IBinder client)
+	throws RemoteException
+    {
+	if(client == null)
+	    /* Nothing could ever release an untied session */
+	    throw new IllegalArgumentException("client binder required");
+	final EntryPoints register = sessions.open();
+	final InspectionStub session = new InspectionStub
+	    (register, sessions, jobs, recorder, profiler, timeline, monitor,
+	     context);
+	if(!session.tie(client)) {
+	    /* Already dead */
+	    sessions.close(register);
+	    return null;
+	}
+	return session;
+    }
+
+    /**
+     * Tie the session to a client binder, so that every handle of the
+     * session is released when the client dies.
+     *
+     * @param client the client binder
+     * @return <code>false</code> if the client is already dead
+     */
+    private synchronized boolean tie
+	(final IBinder client)
+    {
+	final EntryPoints register = entryPoints;
+	final IBinder.DeathRecipient recipient = new IBinder.DeathRecipient() {
+		public void binderDied() {
+		    if(sessions.close(register))
+			jobs.cancelAll(register);
+		}
+	    };
+	try {
+	    client.linkToDeath(recipient, 0);
+	} catch (RemoteException e) {
+	    return false;
 	}
-	if(!entryPoints.contains(o)) {
-	    entryPoints.add(o);
+	this.client = client;
+	this.death = recipient;
+	return true;
+    }
+
+    /**
+     * @see IInspectionService.closeSession
+     */
+    public boolean closeSession
+	()
+	throws RemoteException
+    {
+	synchronized(this) {
+	    if(client != null) {
+		client.unlinkToDeath(death, 0);
+		client = null;
+		death = null;
+	    }
 	}
-	return entryPoints.indexOf(o);
+	if(!sessions.close(entryPoints))
+	    return false;
+	jobs.cancelAll(entryPoints);
+	return true;
     }
 
     /**
@@ -373,7 +796,12 @@ public class InspectionStub
 	throws RemoteException
     {
 	Vector<String> result = new Vector<String>();
-	for(final Object entryPoint: entryPoints) {
+	for(final Object entryPoint: entryPoints.toArray()) {
+	    /* Keep released slots so that positions match handles */
+	    if(entryPoint == null) {
+		result.add("null" + SEPARATOR + "null");
+		continue;
+	    }
 	    result.add(entryPoint.toString()
 		       + SEPARATOR
 		       + entryPoint.getClass().getName());
@@ -387,139 +815,442 @@ public class InspectionStub
     public int[] filterEntryPoints
 	(String type)
     {
-	final Vector<Object> filtered = new Vector<Object>();
-	/*
-	 * For every entry point, check if it is instance of the given class,
-	 * then potentially add to the result
-	 */
-	try {
-	    final Class<?> filter = Class.forName(type);
-	    for(Object o: entryPoints)
-		if(filter.isInstance(o))
-		    filtered.add(o);
-	} catch (final ClassNotFoundException e) {
-	    e.printStackTrace();
-	}
 	/*
-	 * Convert the list to an identifiers array then return
+	 * Lookup in the type index of the register, there is no need for the
+	 * type to be resolvable from the service class loader
 	 */
-	final int[] result = new int[filtered.size()];
-	for(int i = 0; i < filtered.size(); i++)
-	    result[i] = entryPoints.indexOf(filtered.get(i));
-	return result;
+	return entryPoints.filter(new String[]{type}, null);
     }
 
     /**
-     * @see IInspectionService.getFields
+     * @see IInspectionService.filterEntryPointsByTypes
      */
-    public String[] getFields
-	(final int entryPoint,
-	 final int[] path)
+    public int[] filterEntryPointsByTypes
+	(final String[] types,
+	 final int classLoader)
 	throws RemoteException
     {
-	final Vector<String> result = new Vector<String>();
-	for(final Field f: listFields(entryPoint, path)) {
-	    result.add(f.getName()
-		       + SEPARATOR
-		       + Modifier.toString(f.getModifiers())
-		       + " "
-		       +f.getType().getName());
+	ClassLoader loader = null;
+	if(classLoader >= 0) {
+	    /* Accept either a class loader or a class as the hint */
+	    final Object o = entryPoints.get(classLoader);
+	    if(o instanceof ClassLoader)
+		loader = (ClassLoader)o;
+	    else if(o instanceof Class<?>)
+		loader = ((Class<?>)o).getClassLoader();
+	    else if(o != null)
+		loader = o.getClass().getClassLoader();
 	}
-	return result.toArray(new String[result.size()]);
+	return entryPoints.filter(types, loader);
     }
 
     /**
-     * @see IInspectionService.getClasses
+     * @see IInspectionService.release
      */
-    public String[] getClasses
-	(final int entryPoint,
-	 final int[] path)
+    public boolean release
+	(final int entryPoint)
 	throws RemoteException
     {
-	final Vector<String> result = new Vector<String>();
-	for(final Class c: listClasses(entryPoint, path)) {
-	    result.add(c.getName()
-		       + SEPARATOR
-		       + c.toString());
-	}
-	return result.toArray(new String[]{});
+	return entryPoints.release(entryPoint);
     }
 
     /**
-     * @see IInspectionService.getMethods
+     * @see IInspectionService.getHeapHistogram
      */
-    public String[] getMethods
-	(final int entryPoint,
-	 final int[] path)
+    public String[] getHeapHistogram
+	(final boolean statics,
+	 final int timeBudget,
+	 final int nodeBudget)
 	throws RemoteException
     {
-	final Vector<String> result = new Vector<String>();
-	for(final Method m: listMethods(entryPoint, path)) {
-	    result.add(m.getName()
-		       + SEPARATOR
-		       + m.toString());
-	}
-	return result.toArray(new String[]{});
+	return new HeapHistogram(entryPoints.toArray(), statics,
+				 timeBudget, nodeBudget).getHistogram();
     }
 
     /**
-     * @see IInspectionService.newInstance
+     * @see IInspectionService.getRetainedSizes
      */
-    public int newInstance
-	(final int entryPoint,
-	 final int[] path,
-	 final int[] paramsId)
+    public String[] getRetainedSizes
+	(final boolean statics,
+	 final int top,
+	 final int timeBudget,
+	 final int nodeBudget)
+	throws RemoteException
     {
-	Object o = null;
-	final Object[] params = new Object[paramsId.length];
-	for(int i = 0; i < params.length; i++) {
-        if (paramsId[i] < 0)
-            params[i] = null;
-        else
-	        params[i] = entryPoints.get(paramsId[i]);
-	}
-	/* List constructors */
-	for(final Constructor c: listConstructors((Class<?>)resolvePath(entryPoint, path))) {
-	    try {
-		if (c.getParameterTypes().length == params.length) {
-		    o = c.newInstance(params);
-		    /* Push as an entrypoint */
-		    if (o != null)
-			return pushObject(o);
-		}
-	    } catch(InstantiationException e) {
-		return -1;
-	    } catch(IllegalArgumentException e) {
-	    } catch(InvocationTargetException e) {
-		return -2;
-	    } catch(Exception e) {
-		return -3;
-	    }
-	}
-	/* Error */
-	return -1;
+	return new HeapHistogram(entryPoints.toArray(), statics,
+				 timeBudget, nodeBudget).getRetained(top);
     }
 
     /**
-     * @see IInspectionService.getPath
+     * @see IInspectionService.findReferencePath
      */
-    public String getPath
+    public int[] findReferencePath
 	(final int entryPoint,
-	 final int[] path)
+	 final int[] path,
+	 final boolean statics,
+	 final int timeBudget,
+	 final int nodeBudget)
 	throws RemoteException
     {
-	String result = resolvePath(entryPoint, path).toString();
-	for(final Field f: browsePath(entryPoint, path))
-	    result += SEPARATOR + f.getName();
-	return result;
+	final Object target = resolvePath(entryPoint, path);
+	if(target == null)
+	    return null;
+	return new ReferencePath(entryPoints.toArray(), target, statics,
+				 timeBudget, nodeBudget).toPath(entryPoints);
     }
 
     /**
-     * @see IInspectionService.getType
+     * @see IInspectionService.startRecording
      */
-    public String getType
-	(final int entryPoint,
-	 final int[] path)
+    public boolean startRecording
+	(final String name)
+	throws RemoteException
+    {
+	if(name == null || name.length() == 0 || name.indexOf('/') >= 0
+	   || name.startsWith("."))
+	    return false;
+	return recorder.start
+	    (new File(context.getDir("recordings", Context.MODE_PRIVATE), name));
+    }
+
+    /**
+     * @see IInspectionService.stopRecording
+     */
+    public boolean stopRecording
+	()
+	throws RemoteException
+    {
+	return recorder.stop();
+    }
+
+    /**
+     * @see IInspectionService.startProfiler
+     */
+    public boolean startProfiler
+	(final boolean allThreads,
+	 final int interval)
+	throws RemoteException
+    {
+	return profiler.start(allThreads, interval);
+    }
+
+    /**
+     * @see IInspectionService.stopProfiler
+     */
+    public int stopProfiler
+	()
+	throws RemoteException
+    {
+	return profiler.stop();
+    }
+
+    /**
+     * @see IInspectionService.getProfile
+     */
+    public String[] getProfile
+	()
+	throws RemoteException
+    {
+	return profiler.getFolded();
+    }
+
+    /**
+     * @see IInspectionService.getLifecycleTimeline
+     */
+    public String[] getLifecycleTimeline
+	(final long since)
+	throws RemoteException
+    {
+	return timeline.getTimeline(since);
+    }
+
+    /**
+     * @see IInspectionService.getLifecycleLatencies
+     */
+    public String[] getLifecycleLatencies
+	()
+	throws RemoteException
+    {
+	return timeline.getLatencies();
+    }
+
+    /**
+     * @see IInspectionService.startLooperMonitor
+     */
+    public boolean startLooperMonitor
+	(final int threshold)
+	throws RemoteException
+    {
+	return monitor.start(threshold);
+    }
+
+    /**
+     * @see IInspectionService.stopLooperMonitor
+     */
+    public boolean stopLooperMonitor
+	()
+	throws RemoteException
+    {
+	return monitor.stop();
+    }
+
+    /**
+     * @see IInspectionService.getLooperStats
+     */
+    public Bundle getLooperStats
+	(final boolean reset)
+	throws RemoteException
+    {
+	return monitor.getStats(reset);
+    }
+
+    /**
+     * @see IInspectionService.getFields
+     */
+    public String[] getFields
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Vector<String> result = new Vector<String>();
+	for(final Field f: listFields(entryPoint, path)) {
+	    result.add(f.getName()
+		       + SEPARATOR
+		       + Modifier.toString(f.getModifiers())
+		       + " "
+		       +f.getType().getName());
+	}
+	return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * @see IInspectionService.getClasses
+     */
+    public String[] getClasses
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Vector<String> result = new Vector<String>();
+	for(final Class c: listClasses(entryPoint, path)) {
+	    result.add(c.getName()
+		       + SEPARATOR
+		       + c.toString());
+	}
+	return result.toArray(new String[]{});
+    }
+
+    /**
+     * @see IInspectionService.getMethods
+     */
+    public String[] getMethods
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Vector<String> result = new Vector<String>();
+	for(final Method m: listMethods(entryPoint, path)) {
+	    result.add(m.getName()
+		       + SEPARATOR
+		       + m.toString());
+	}
+	return result.toArray(new String[]{});
+    }
+
+    /**
+     * Check whether a class ends a filtered listing.
+     *
+     * @param c the class
+     * @param stopAt a class name, or a package prefix ending with ".",
+     *        <code>null</code> or empty for none
+     * @return <code>true</code> if the class and its superclasses must not
+     *         be listed
+     */
+    private static boolean isStop
+	(final Class<?> c,
+	 final String stopAt)
+    {
+	if(stopAt == null || stopAt.length() == 0)
+	    return false;
+	return stopAt.endsWith(".") ?
+	    c.getName().startsWith(stopAt) : c.getName().equals(stopAt);
+    }
+
+    /**
+     * List the members of an object type matching a filter.
+     *
+     * Classes are walked in the same order as <code>listFields</code> and
+     * <code>listMethods</code>, and the walk stops as soon as the page is
+     * full or a stop class is reached, so that unrequested superclasses are
+     * never inspected. Members keep their index in the unfiltered list.
+     *
+     * @param o the object
+     * @param methods whether to list methods instead of fields
+     * @param flags a combination of <code>LIST_DECLARED</code>,
+     *        <code>LIST_INSTANCE</code> and <code>LIST_STATIC</code>
+     * @param stopAt the stop class name or package prefix
+     * @param prefix the member name prefix, <code>null</code> for any
+     * @param offset the number of matching members to skip
+     * @param limit the maximum number of members, 0 for no limit
+     * @param indices receives the unfiltered index of every member
+     * @return the matching members
+     */
+    static ArrayList<Member> filterMembers
+	(final Object o,
+	 final boolean methods,
+	 final int flags,
+	 final String stopAt,
+	 final String prefix,
+	 final int offset,
+	 final int limit,
+	 final ArrayList<Integer> indices)
+    {
+	final ArrayList<Member> result = new ArrayList<Member>();
+	Class<?> c = (o instanceof Class<?>) ? (Class<?>)o : o.getClass();
+	int index = 0;
+	int skipped = 0;
+	for(; c != null && !isStop(c, stopAt); c = c.getSuperclass()) {
+	    final Member[] members = methods ?
+		c.getDeclaredMethods() : c.getDeclaredFields();
+	    for(final Member m: members) {
+		final int i = index++;
+		final boolean isStatic = Modifier.isStatic(m.getModifiers());
+		if(((flags & LIST_INSTANCE) != 0 && isStatic)
+		   || ((flags & LIST_STATIC) != 0 && !isStatic)
+		   || (prefix != null && !m.getName().startsWith(prefix)))
+		    continue;
+		if(skipped < offset) {
+		    skipped++;
+		    continue;
+		}
+		result.add(m);
+		indices.add(i);
+		if(limit > 0 && result.size() >= limit)
+		    return result;
+	    }
+	    if((flags & LIST_DECLARED) != 0)
+		break;
+	}
+	return result;
+    }
+
+    /**
+     * @see IInspectionService.getFieldsFiltered
+     */
+    public String[] getFieldsFiltered
+	(final int entryPoint,
+	 final int[] path,
+	 final int flags,
+	 final String stopAt,
+	 final String prefix,
+	 final int offset,
+	 final int limit)
+	throws RemoteException
+    {
+	final ArrayList<Integer> indices = new ArrayList<Integer>();
+	final ArrayList<Member> fields = filterMembers
+	    (resolvePath(entryPoint, path), false, flags, stopAt, prefix,
+	     offset, limit, indices);
+	final String[] result = new String[fields.size()];
+	for(int i = 0; i < result.length; i++) {
+	    final Field f = (Field)fields.get(i);
+	    result[i] = indices.get(i)
+		+ SEPARATOR
+		+ f.getName()
+		+ SEPARATOR
+		+ Modifier.toString(f.getModifiers())
+		+ " "
+		+ f.getType().getName();
+	}
+	return result;
+    }
+
+    /**
+     * @see IInspectionService.getMethodsFiltered
+     */
+    public String[] getMethodsFiltered
+	(final int entryPoint,
+	 final int[] path,
+	 final int flags,
+	 final String stopAt,
+	 final String prefix,
+	 final int offset,
+	 final int limit)
+	throws RemoteException
+    {
+	final ArrayList<Integer> indices = new ArrayList<Integer>();
+	final ArrayList<Member> methods = filterMembers
+	    (resolvePath(entryPoint, path), true, flags, stopAt, prefix,
+	     offset, limit, indices);
+	final String[] result = new String[methods.size()];
+	for(int i = 0; i < result.length; i++) {
+	    result[i] = indices.get(i)
+		+ SEPARATOR
+		+ methods.get(i).getName()
+		+ SEPARATOR
+		+ methods.get(i).toString();
+	}
+	return result;
+    }
+
+    /**
+     * @see IInspectionService.newInstance
+     */
+    public int newInstance
+	(final int entryPoint,
+	 final int[] path,
+	 final int[] paramsId)
+    {
+	Object o = null;
+	final Object[] params = new Object[paramsId.length];
+	for(int i = 0; i < params.length; i++) {
+        if (paramsId[i] < 0)
+            params[i] = null;
+        else
+	        params[i] = entryPoints.get(paramsId[i]);
+	}
+	/* List constructors */
+	for(final Constructor c: listConstructors((Class<?>)resolvePath(entryPoint, path))) {
+	    try {
+		if (c.getParameterTypes().length == params.length) {
+		    o = c.newInstance(params);
+		    /* Push as an entrypoint */
+		    if (o != null)
+			return pushObject(o);
+		}
+	    } catch(InstantiationException e) {
+		return -1;
+	    } catch(IllegalArgumentException e) {
+	    } catch(InvocationTargetException e) {
+		return -2;
+	    } catch(Exception e) {
+		return -3;
+	    }
+	}
+	/* Error */
+	return -1;
+    }
+
+    /**
+     * @see IInspectionService.getPath
+     */
+    public String getPath
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	String result = resolvePath(entryPoint, path).toString();
+	for(final Field f: browsePath(entryPoint, path))
+	    result += SEPARATOR + f.getName();
+	return result;
+    }
+
+    /**
+     * @see IInspectionService.getType
+     */
+    public String getType
+	(final int entryPoint,
+	 final int[] path)
 	throws RemoteException
     {
 	final Object o = resolvePath(entryPoint, path);
@@ -527,293 +1258,1558 @@ public class InspectionStub
     }
 
     /**
-     * @see IInspectionService.getTypes
+     * @see IInspectionService.getTypes
+     */
+    public String[] getTypes
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Vector<String> result = new Vector<String>();
+	final Object o = resolvePath(entryPoint, path);
+	if(o == null) {
+	    result.add("null");
+	}
+	else {
+	    Class<?> c = o.getClass();
+	    result.add(c.getName());
+	    for(; c != null; c = c.getSuperclass()) {
+		result.add(c.getName());
+		/* Add every implemented interfaces */
+		for (Class i: c.getInterfaces())
+		    result.add(i.getName());
+	    }
+	}
+	return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * @see IInspectionService.getClass
+     */
+    public int getClass
+	(final String className)
+    {
+        try {
+            Class<?> c = Class.forName(className);
+            return pushObject(c);
+        }
+        catch(ClassNotFoundException e) {
+            return -1;
+        }
+    }
+
+
+    /**
+     * @see IInspectionService.getValue
+     */
+    public String getValue
+	(final int entryPoint,
+	 final int[] path)
+    {
+	final Object o = resolvePath(entryPoint, path);
+	return (o == null) ? "null" : o.toString();
+    }
+
+    /**
+     * @see IInspectionService.setValue
+     */
+    public void setValue
+	(final int entryPoint,
+	 final int[] path,
+	 final int value)
+	throws RemoteException
+    {
+	if(path.length > 0) {
+	    final int[] parent = new int[path.length - 1];
+	    System.arraycopy(path, 0, parent, 0, parent.length);
+	    final Field f = browsePath(entryPoint, path).get(parent.length);
+	    final Object o = resolvePath(entryPoint, parent);
+	    final Object v = (value >= 0) ? entryPoints.get(value) : null;
+	    if(checkSet(f, o, v) == SET_OK)
+		set(f, o, v);
+	}
+    }
+
+    /**
+     * Select fields of an object by index in the field list.
+     *
+     * @param o the object
+     * @param indices the field indices
+     * @return the fields, <code>null</code> for invalid indices
+     */
+    private Field[] fieldsByIndex
+	(final Object o,
+	 final int[] indices)
+    {
+	final Vector<Field> fields = listFields(o);
+	final Field[] result = new Field[indices.length];
+	for(int i = 0; i < indices.length; i++)
+	    if(indices[i] >= 0 && indices[i] < fields.size())
+		result[i] = fields.get(indices[i]);
+	return result;
+    }
+
+    /**
+     * Select fields of an object by name.
+     *
+     * @param o the object
+     * @param names the field names
+     * @return the fields, <code>null</code> for unknown names
+     */
+    private static Field[] fieldsByName
+	(final Object o,
+	 final String[] names)
+    {
+	final Map<String, Field> fields = FieldIndex.fields
+	    (FieldIndex.classOf(o));
+	final Field[] result = new Field[names.length];
+	for(int i = 0; i < names.length; i++)
+	    result[i] = fields.get(names[i]);
+	return result;
+    }
+
+    /**
+     * Read several fields of the same object.
+     *
+     * @param o the object
+     * @param fields the fields
+     * @return field values as returned by <code>getValue</code>, or
+     *         <code>null</code> for missing fields
+     */
+    private static String[] getValues
+	(final Object o,
+	 final Field[] fields)
+    {
+	final String[] result = new String[fields.length];
+	for(int i = 0; i < fields.length; i++) {
+	    if(fields[i] == null)
+		continue;
+	    final Object value = get(fields[i], o);
+	    result[i] = (value == null) ? "null" : value.toString();
+	}
+	return result;
+    }
+
+    /**
+     * Write several fields of the same object at once.
+     *
+     * Every write is checked before any field is modified; if one is
+     * invalid, no field is written.
+     *
+     * @param o the object
+     * @param fields the fields
+     * @param values the new values as entry point indices, negative for
+     *        <code>null</code>
+     * @param uiThread whether to apply writes on the UI thread
+     * @return a status for every field
+     */
+    private int[] setValues
+	(final Object o,
+	 final Field[] fields,
+	 final int[] values,
+	 final boolean uiThread)
+    {
+	final int[] status = new int[fields.length];
+	if(values.length != fields.length) {
+	    Arrays.fill(status, SET_BAD_VALUE);
+	    return status;
+	}
+	final Object[] objects = new Object[fields.length];
+	boolean valid = true;
+	for(int i = 0; i < fields.length; i++) {
+	    if(fields[i] == null) {
+		status[i] = SET_NO_FIELD;
+	    }
+	    else if(values[i] >= entryPoints.size()
+		    || (values[i] >= 0
+			&& entryPoints.get(values[i]) == null)) {
+		/* Released slots are not null references */
+		status[i] = SET_BAD_VALUE;
+	    }
+	    else {
+		objects[i] = (values[i] < 0) ? null : entryPoints.get(values[i]);
+		status[i] = checkSet(fields[i], o, objects[i]);
+	    }
+	    valid &= (status[i] == SET_OK);
+	}
+	if(!valid) {
+	    for(int i = 0; i < status.length; i++)
+		if(status[i] == SET_OK)
+		    status[i] = SET_SKIPPED;
+	    return status;
+	}
+	final Runnable apply = new Runnable() {
+		public void run() {
+		    for(int i = 0; i < fields.length; i++)
+			status[i] = trySet(fields[i], o, objects[i]);
+		}
+	    };
+	if(!uiThread)
+	    apply.run();
+	else if(!runOnUiThread(apply))
+	    /* The writes may still happen later, report it */
+	    Arrays.fill(status, SET_TIMEOUT);
+	return status;
+    }
+
+    /**
+     * @see IInspectionService.getValues
+     */
+    public String[] getValues
+	(final int entryPoint,
+	 final int[] path,
+	 final int[] fields)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	if(o == null)
+	    return new String[fields.length];
+	return getValues(o, fieldsByIndex(o, fields));
+    }
+
+    /**
+     * @see IInspectionService.getValuesByName
+     */
+    public String[] getValuesByName
+	(final int entryPoint,
+	 final int[] path,
+	 final String[] names)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	if(o == null)
+	    return new String[names.length];
+	return getValues(o, fieldsByName(o, names));
+    }
+
+    /**
+     * @see IInspectionService.setValues
+     */
+    public int[] setValues
+	(final int entryPoint,
+	 final int[] path,
+	 final int[] fields,
+	 final int[] values,
+	 final boolean uiThread)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	if(o == null)
+	    return setValues(o, new Field[fields.length], values, uiThread);
+	return setValues(o, fieldsByIndex(o, fields), values, uiThread);
+    }
+
+    /**
+     * @see IInspectionService.setValuesByName
+     */
+    public int[] setValuesByName
+	(final int entryPoint,
+	 final int[] path,
+	 final String[] names,
+	 final int[] values,
+	 final boolean uiThread)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	if(o == null)
+	    return setValues(o, new Field[names.length], values, uiThread);
+	return setValues(o, fieldsByName(o, names), values, uiThread);
+    }
+
+    /**
+     * @see IInspectionService.getMethodName
+     */
+    public String getMethodName
+	(final int entryPoint,
+	 final int[] path,
+	 final int method)
+	throws RemoteException
+    {
+	return listMethods(resolvePath(entryPoint, path))
+	    .get(method)
+	    .toString();
+    }
+
+    /**
+     * @see IInspectionService.getMethodParams
+     */
+    public String[] getMethodParams
+	(final int entryPoint,
+	 final int[] path,
+	 final int method,
+	 final int[] parameters)
+	throws RemoteException
+    {
+	final Class<?>[] params = listMethods(resolvePath(entryPoint, path))
+	    .get(method)
+	    .getParameterTypes();
+	String[] result = new String[params.length];
+	for(int i = 0; i < params.length; i++) {
+	    result[i] = "";
+	    if(parameters.length == params.length) {
+		result[i] += (parameters[i] >= 0) ?
+		    entryPoints.get(parameters[i]).toString() : "-";
+		result[i] += SEPARATOR;
+	    }
+	    result[i] += params[i].getName();
+	}
+	return result;
+    }
+
+
+    /**
+     * @see IInspectionService.invokeMethod
+     */
+    public int invokeMethod
+	(final int entryPoint,
+	 final int[] path,
+	 final int method,
+	 final int[] paramsId)
+	throws RemoteException
+    {
+	/*
+	 * Fetch the method and prepare the parameters
+	 */
+	final Method m = listMethods(resolvePath(entryPoint, path))
+	    .get(method);
+	m.setAccessible(true);
+	final Object[] params = new Object[paramsId.length];
+	for(int i = 0; i < params.length; i++) {
+	    if (paramsId[i]<0)
+		params[i] = null;
+	    else
+	        params[i] = entryPoints.get(paramsId[i]);
+	}
+	/*
+	 * Call the method
+	 */
+	try {
+	    return invoke(resolvePath(entryPoint, path), m, params);
+	} catch (IllegalArgumentException e) {
+	    return -1;
+	}
+    }
+
+    /**
+     * @see IInspectionService.invokeMethodByName
+     */
+    public int invokeMethodByName
+	(final int entryPoint,
+	 final int[] path,
+	 final String method,
+	 final int[] paramsId)
+	throws RemoteException
+    {
+	return invokeByName(resolvePath(entryPoint, path), method, paramsId);
+    }
+
+    /**
+     * Invoke a method by name, trying every overload until one accepts the
+     * parameters.
+     *
+     * @param o the object where the method is declared
+     * @param method the method name
+     * @param paramsId the parameter list as entry point indices
+     * @return entryPoint index or less than 0 if an error occured
+     */
+    private int invokeByName
+	(final Object o,
+	 final String method,
+	 final int[] paramsId)
+    {
+	/* Build the parameters objects */
+	final Object[] params = new Object[paramsId.length];
+	for(int i = 0; i < params.length; i++) {
+	    if (paramsId[i]<0)
+		params[i] = null;
+	    else
+	        params[i] = entryPoints.get(paramsId[i]);
+	}
+
+	/* Loop on methods with the same name and try all of them */
+	for (Method m : listMethods(o)) {
+	    if (m.getName().equals(method)) {
+		m.setAccessible(true);
+		try {
+		    return invoke(o, m, params);
+		} catch (IllegalArgumentException e) {
+		}
+	    }
+	}
+	return -2;
+    }
+
+    /**
+     * @see IInspectionService.invokeMethodAsync
+     */
+    public int invokeMethodAsync
+	(final int entryPoint,
+	 final int[] path,
+	 final String method,
+	 final int[] paramsId,
+	 final int timeout,
+	 final IInvocationCallback callback)
+	throws RemoteException
+    {
+	/* Resolve references now, so that later changes do not interfere */
+	final Object o = resolvePath(entryPoint, path);
+	final Object[] params = new Object[paramsId.length];
+	for(int i = 0; i < params.length; i++) {
+	    if (paramsId[i]<0)
+		params[i] = null;
+	    else
+	        params[i] = entryPoints.get(paramsId[i]);
+	}
+	return jobs.submit(entryPoints, new Callable<Integer>() {
+		public Integer call() throws Exception {
+		    return invokeStrict(o, method, params);
+		}
+	    }, timeout, callback);
+    }
+
+    /**
+     * Invoke a method by name on the calling thread, reporting errors.
+     *
+     * Unlike <code>invoke</code>, there is no fallback to the UI thread, and
+     * exceptions thrown by the target method are propagated.
+     *
+     * @param o the object where the method is declared
+     * @param method the method name
+     * @param params the parameters
+     * @return entryPoint index of the result, or -1 for <code>null</code>
+     * @throws Exception the exception thrown by the target method
+     */
+    private int invokeStrict
+	(final Object o,
+	 final String method,
+	 final Object[] params)
+	throws Exception
+    {
+	for (Method m : listMethods(o)) {
+	    if (m.getName().equals(method)
+		&& m.getParameterTypes().length == params.length) {
+		m.setAccessible(true);
+		try {
+		    return entryPoints.add(m.invoke(o, params));
+		} catch (IllegalArgumentException e) {
+		    /* Try the next overload */
+		} catch (InvocationTargetException e) {
+		    final Throwable cause = e.getCause();
+		    if(cause instanceof Exception)
+			throw (Exception)cause;
+		    throw e;
+		}
+	    }
+	}
+	throw new NoSuchMethodException(method);
+    }
+
+    /**
+     * @see IInspectionService.getJobStatus
+     */
+    public String getJobStatus
+	(final int job)
+	throws RemoteException
+    {
+	return jobs.status(entryPoints, job);
+    }
+
+    /**
+     * @see IInspectionService.cancelJob
+     */
+    public boolean cancelJob
+	(final int job)
+	throws RemoteException
+    {
+	return jobs.cancel(entryPoints, job);
+    }
+
+    /**
+     * Resolve a name-based expression from an entry point.
+     *
+     * @param entryPoint the entry point
+     * @param expression the expression, see <code>PathExpression</code>
+     * @return the referenced object
+     * @throws IllegalArgumentException if the expression cannot be resolved
+     */
+    public Object resolveExpression
+	(final int entryPoint,
+	 final String expression)
+	throws IllegalArgumentException
+    {
+	return new PathExpression(expression)
+	    .resolve(entryPoints.get(entryPoint));
+    }
+
+    /**
+     * @see IInspectionService.resolve
+     */
+    public String resolve
+	(final int entryPoint,
+	 final String expression)
+	throws RemoteException
+    {
+	try {
+	    final Object o = resolveExpression(entryPoint, expression);
+	    return (o == null) ? "null" : o.toString()
+		+ SEPARATOR
+		+ o.getClass().getName();
+	} catch (IllegalArgumentException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * @see IInspectionService.pushResolved
+     */
+    public int pushResolved
+	(final int entryPoint,
+	 final String expression)
+	throws RemoteException
+    {
+	try {
+	    return pushObject(resolveExpression(entryPoint, expression));
+	} catch (IllegalArgumentException e) {
+	    return -2;
+	}
+    }
+
+    /**
+     * @see IInspectionService.invokeResolved
+     */
+    public int invokeResolved
+	(final int entryPoint,
+	 final String expression,
+	 final String method,
+	 final int[] paramsId)
+	throws RemoteException
+    {
+	final Object o;
+	try {
+	    o = resolveExpression(entryPoint, expression);
+	} catch (IllegalArgumentException e) {
+	    return -3;
+	}
+	if(o == null)
+	    return -3;
+	return invokeByName(o, method, paramsId);
+    }
+
+    /**
+     * @see IInspectionService.select
+     */
+    public Bundle select
+	(final String[] types,
+	 final int classLoader,
+	 final String expression,
+	 final boolean push)
+	throws RemoteException
+    {
+	final PathExpression parsed;
+	try {
+	    parsed = new PathExpression(expression);
+	} catch (IllegalArgumentException e) {
+	    return null;
+	}
+	final int[] handles = filterEntryPointsByTypes(types, classLoader);
+	final Object[] targets = new Object[handles.length];
+	for(int i = 0; i < handles.length; i++)
+	    targets[i] = entryPoints.get(handles[i]);
+	final Select select;
+	try {
+	    select = new Select(parsed, targets);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return null;
+	}
+	final Bundle result = new Bundle();
+	result.putIntArray(Select.HANDLES, handles);
+	result.putStringArray(Select.VALUES, select.getValues());
+	result.putIntArray(Select.STATUS, select.getStatus());
+	if(push) {
+	    /* Pushed in row order, after evaluation, to keep indices stable */
+	    final int[] pushed = new int[handles.length];
+	    for(int i = 0; i < handles.length; i++)
+		pushed[i] = (select.getStatus()[i] == Select.OK)
+		    ? pushObject(select.getResults()[i]) : -2;
+	    result.putIntArray(Select.PUSHED, pushed);
+	}
+	return result;
+    }
+
+
+    /**
+     * @see IInspectionService.isIterable
+     */
+    public boolean isIterable
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	return o.getClass().isArray() || (o instanceof Iterable);
+    }
+
+    /**
+     * @see IInspectionService.listIterable
+     */
+    public String[] getIterable
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	final Vector<String> result = new Vector<String>();
+	/*
+	 * For arrays, use array reflection API that allows browsing native
+	 * arrays
+	 */
+	if(o.getClass().isArray()) {
+	    for(int i = 0; i < Array.getLength(o); i++) {
+		final Object item = Array.get(o, i);
+		result.add(item.toString()
+			   + SEPARATOR
+			   + item.getClass().getName());
+	    }
+	}
+	/*
+	 * For any other iterable implementing the Java Interface, simply cast
+	 * and use Iterable methods
+	 */
+	else if(o instanceof Iterable<?>) {
+	    for(final Object i: (Iterable<?>) o) {
+		result.add(i.toString()
+			   + SEPARATOR
+			   + i.getClass().getName());
+	    }
+	}
+	return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * @see IInspectionService.getIterableItem
+     */
+    public int getIterableItem
+	(final int entryPoint,
+	 final int[] path,
+	 final int item)
+	throws RemoteException
+    {
+	final Object o = resolvePath(entryPoint, path);
+	int result = 0;
+	if(o.getClass().isArray()) {
+	    result = pushObject(Array.get(o, item));
+	}
+	else if(o instanceof Iterable<?>) {
+	    final Iterator<?> it = ((Iterable<?>) o).iterator();
+	    Object r = null;
+	    for(int i = 0; i <= item; i++) {
+		r = it.next();
+	    }
+	    result = pushObject(r);
+	}
+	return result;
+    }
+
+    /**
+     * Find the root of the View hierarchy attached to an object.
+     *
+     * @param o an <code>Activity</code>, a <code>Window</code> or a
+     *        <code>View</code>
+     * @return the root view or <code>null</code>
+     */
+    private static View rootView
+	(final Object o)
+    {
+	if(o instanceof Activity)
+	    return rootView(((Activity)o).getWindow());
+	if(o instanceof Window)
+	    return ((Window)o).getDecorView();
+	if(o instanceof View)
+	    return (View)o;
+	return null;
+    }
+
+    /**
+     * Capture a View hierarchy on the UI thread.
+     *
+     * @param root the root view
+     * @return the capture or <code>null</code> on timeout
+     */
+    private ViewCapture capture
+	(final View root)
+    {
+	final int id;
+	synchronized(captures) {
+	    id = ++lastCapture;
+	}
+	final ViewCapture[] result = new ViewCapture[1];
+	/* 0 while pending, 1 once started, 2 once given up */
+	final AtomicInteger state = new AtomicInteger(0);
+	final CountDownLatch done = new CountDownLatch(1);
+	if(!runOnUiThread(new Runnable(){
+		public void run() {
+		    if(!state.compareAndSet(0, 1))
+			return;
+		    try {
+			result[0] = new ViewCapture(id, root, entryPoints);
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    })) {
+	    /* Do not push a hierarchy nobody waits for anymore */
+	    if(state.compareAndSet(0, 2))
+		return null;
+	    /* The walk already started and is bounded, wait for its nodes */
+	    try {
+		done.await();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    if(result[0] == null)
+		return null;
+	}
+	synchronized(captures) {
+	    captures.put(id, result[0]);
+	}
+	return result[0];
+    }
+
+    /**
+     * @see IInspectionService.captureViewTree
+     */
+    public String[] captureViewTree
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final View root = rootView(resolvePath(entryPoint, path));
+	if(root == null)
+	    return new String[0];
+	final ViewCapture c = capture(root);
+	return (c == null) ? new String[0] : c.getRows();
+    }
+
+    /**
+     * @see IInspectionService.refreshViewTree
+     */
+    public String[] refreshViewTree
+	(final int captureId)
+	throws RemoteException
+    {
+	final ViewCapture previous;
+	synchronized(captures) {
+	    previous = captures.get(captureId);
+	}
+	if(previous == null)
+	    return new String[0];
+	final ViewCapture c = capture(previous.getRoot());
+	if(c == null)
+	    return new String[0];
+	final String[] result = c.diff(previous);
+	c.releaseRemoved(previous, entryPoints);
+	return result;
+    }
+
+    /**
+     * @see IInspectionService.pushString
+     */
+    public int pushString
+	(final String s)
+	throws RemoteException
+    {
+	return pushObject(s);
+    }
+
+    /**
+     * @see IInspectionService.pushInt
+     */
+    public int pushInt
+	(final int i)
+	throws RemoteException
+    {
+	return pushObject(i);
+    }
+
+    /**
+     * @see IInspectionService.pushBoolean
+     */
+    public int pushBoolean
+	(final boolean b)
+	throws RemoteException
+    {
+	return pushObject(b);
+    }
+
+    /**
+     * Reference to a field of a resolved object.
+     */
+    private static final class FieldReference
+    {
+	/**
+	 * Object declaring the field, or the class for static fields
+	 */
+	final Object parent;
+
+	/**
+	 * The accessible field
+	 */
+	final Field field;
+
+	/**
+	 * Constructor
+	 *
+	 * @param parent the object declaring the field
+	 * @param field the field
+	 */
+	FieldReference
+	    (final Object parent,
+	     final Field field)
+	{
+	    this.parent = parent;
+	    this.field = field;
+	    field.setAccessible(true);
+	}
+    }
+
+    /**
+     * Resolve the field referenced by the last item of a path.
+     *
+     * @param entryPoint the entry point
+     * @param path the path
+     * @return the field reference, or <code>null</code> for an empty path
+     * @throws IllegalArgumentException if the path cannot be resolved or the
+     *         parent object is null
+     */
+    private FieldReference fieldReference
+	(final int entryPoint,
+	 final int[] path)
+	throws IllegalArgumentException
+    {
+	if(path.length == 0)
+	    return null;
+	final int[] parent = new int[path.length - 1];
+	System.arraycopy(path, 0, parent, 0, parent.length);
+	try {
+	    final Object o = resolvePath(entryPoint, parent);
+	    if(o == null)
+		throw new IllegalArgumentException("null reference");
+	    return new FieldReference
+		(o, listFields(o).get(path[parent.length]));
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException(e.toString());
+	} catch (SecurityException e) {
+	    throw new IllegalArgumentException(e.toString());
+	}
+    }
+
+    /**
+     * Resolve the field written by a typed setter.
+     *
+     * @param entryPoint the entry point
+     * @param path the path, designating the field
+     * @return the field reference
+     * @throws IllegalArgumentException if the path is empty or cannot be
+     *         resolved, or if the field cannot be written
+     */
+    private FieldReference writableField
+	(final int entryPoint,
+	 final int[] path)
+	throws IllegalArgumentException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    throw new IllegalArgumentException("not a field");
+	if(!isWritable(r.field, r.parent))
+	    throw new IllegalArgumentException
+		("field cannot be written: " + r.field);
+	return r;
+    }
+
+    /**
+     * Get an entry point unboxed by a typed getter with an empty path.
+     *
+     * @param entryPoint the entry point
+     * @param type the expected boxed type
+     * @return the entry point
+     * @throws IllegalArgumentException if the entry point has another type
+     */
+    private Object unboxed
+	(final int entryPoint,
+	 final Class<?> type)
+	throws IllegalArgumentException
+    {
+	final Object o;
+	try {
+	    o = entryPoints.get(entryPoint);
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException(e.toString());
+	}
+	if(!type.isInstance(o))
+	    throw new IllegalArgumentException
+		("not a " + type.getSimpleName() + ": "
+		 + ((o == null) ? "null" : o.getClass().getName()));
+	return o;
+    }
+
+    /**
+     * Report a field access refused by the runtime.
+     *
+     * @param e the access error
+     * @return the exception to throw
+     */
+    private static IllegalArgumentException denied
+	(final IllegalAccessException e)
+    {
+	return new IllegalArgumentException(e.toString());
+    }
+
+    /**
+     * Resolve a primitive array.
+     *
+     * @param entryPoint the entry point
+     * @param path the path
+     * @param type the expected array type
+     * @return the array
+     * @throws IllegalArgumentException if the reference has another type
+     */
+    private Object primitiveArray
+	(final int entryPoint,
+	 final int[] path,
+	 final Class<?> type)
+	throws IllegalArgumentException
+    {
+	final Object o;
+	try {
+	    o = resolvePath(entryPoint, path);
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException(e.toString());
+	}
+	if(o == null || o.getClass() != type)
+	    throw new IllegalArgumentException
+		("not a " + type.getSimpleName() + ": "
+		 + ((o == null) ? "null" : o.getClass().getName()));
+	return o;
+    }
+
+    /**
+     * Copy a slice of a primitive array without boxing.
+     *
+     * @param array the source array
+     * @param offset the slice start
+     * @param length the slice length, negative for the whole remainder
+     * @return a new array of the same type
+     * @throws IllegalArgumentException if the offset is out of range
+     */
+    private static Object slice
+	(final Object array,
+	 final int offset,
+	 final int length)
+	throws IllegalArgumentException
+    {
+	final int size = Array.getLength(array);
+	if(offset < 0 || offset > size)
+	    throw new IllegalArgumentException("offset out of range: " + offset);
+	final int n = (length < 0 || length > size - offset) ?
+	    size - offset : length;
+	final Object result = Array.newInstance
+	    (array.getClass().getComponentType(), n);
+	System.arraycopy(array, offset, result, 0, n);
+	return result;
+    }
+
+    /**
+     * Overwrite a slice of a primitive array without boxing.
+     *
+     * @param array the target array
+     * @param offset the slice start
+     * @param values the new values, of the same type as the target
+     * @throws IllegalArgumentException if the slice does not fit
+     */
+    private static void store
+	(final Object array,
+	 final int offset,
+	 final Object values)
+	throws IllegalArgumentException
+    {
+	try {
+	    System.arraycopy(values, 0, array, offset, Array.getLength(values));
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException
+		("slice out of range: " + offset);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getBoolean
+     */
+    public boolean getBoolean
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Boolean)unboxed(entryPoint, Boolean.class))
+		.booleanValue();
+	try {
+	    return r.field.getBoolean(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setBoolean
+     */
+    public void setBoolean
+	(final int entryPoint,
+	 final int[] path,
+	 final boolean value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setBoolean(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getByte
+     */
+    public byte getByte
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).byteValue();
+	try {
+	    return r.field.getByte(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setByte
+     */
+    public void setByte
+	(final int entryPoint,
+	 final int[] path,
+	 final byte value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setByte(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getShort
+     */
+    public int getShort
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).shortValue();
+	try {
+	    return r.field.getShort(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setShort
+     */
+    public void setShort
+	(final int entryPoint,
+	 final int[] path,
+	 final int value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setShort(r.parent, (short)value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getChar
+     */
+    public char getChar
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Character)unboxed(entryPoint, Character.class))
+		.charValue();
+	try {
+	    return r.field.getChar(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setChar
+     */
+    public void setChar
+	(final int entryPoint,
+	 final int[] path,
+	 final char value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setChar(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getInt
+     */
+    public int getInt
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).intValue();
+	try {
+	    return r.field.getInt(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setInt
+     */
+    public void setInt
+	(final int entryPoint,
+	 final int[] path,
+	 final int value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setInt(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getLong
+     */
+    public long getLong
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).longValue();
+	try {
+	    return r.field.getLong(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setLong
+     */
+    public void setLong
+	(final int entryPoint,
+	 final int[] path,
+	 final long value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setLong(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getFloat
+     */
+    public float getFloat
+	(final int entryPoint,
+	 final int[] path)
+	throws RemoteException
+    {
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).floatValue();
+	try {
+	    return r.field.getFloat(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.setFloat
+     */
+    public void setFloat
+	(final int entryPoint,
+	 final int[] path,
+	 final float value)
+	throws RemoteException
+    {
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setFloat(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
+    }
+
+    /**
+     * @see IInspectionService.getDouble
      */
-    public String[] getTypes
+    public double getDouble
 	(final int entryPoint,
 	 final int[] path)
 	throws RemoteException
     {
-	final Vector<String> result = new Vector<String>();
-	final Object o = resolvePath(entryPoint, path);
-	if(o == null) {
-	    result.add("null");
-	}
-	else {
-	    Class<?> c = o.getClass();
-	    result.add(c.getName());
-	    for(; c != null; c = c.getSuperclass()) {
-		result.add(c.getName());
-		/* Add every implemented interfaces */
-		for (Class i: c.getInterfaces())
-		    result.add(i.getName());
-	    }
+	final FieldReference r = fieldReference(entryPoint, path);
+	if(r == null)
+	    return ((Number)unboxed(entryPoint, Number.class)).doubleValue();
+	try {
+	    return r.field.getDouble(r.parent);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
 	}
-	return result.toArray(new String[result.size()]);
     }
 
-
     /**
-     * @see IInspectionService.getClass
+     * @see IInspectionService.setDouble
      */
-    public int getClass
-	(final String className)
+    public void setDouble
+	(final int entryPoint,
+	 final int[] path,
+	 final double value)
+	throws RemoteException
     {
-        try {
-            Class<?> c = Class.forName(className);
-            return pushObject(c);
-        }
-        catch(ClassNotFoundException e) {
-            return -1;
-        }
+	final FieldReference r = writableField(entryPoint, path);
+	try {
+	    r.field.setDouble(r.parent, value);
+	} catch (IllegalAccessException e) {
+	    throw denied(e);
+	}
     }
 
+    /**
+     * @see IInspectionService.getBooleanArray
+     */
+    public boolean[] getBooleanArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final int length)
+	throws RemoteException
+    {
+	return (boolean[])slice
+	    (primitiveArray(entryPoint, path, boolean[].class), offset, length);
+    }
 
     /**
-     * @see IInspectionService.getValue
+     * @see IInspectionService.setBooleanArray
      */
-    public String getValue
+    public void setBooleanArray
 	(final int entryPoint,
-	 final int[] path)
+	 final int[] path,
+	 final int offset,
+	 final boolean[] values)
+	throws RemoteException
     {
-	final Object o = resolvePath(entryPoint, path);
-	return (o == null) ? "null" : o.toString();
+	store
+	    (primitiveArray(entryPoint, path, boolean[].class), offset, values);
     }
 
     /**
-     * @see IInspectionService.setValue
+     * @see IInspectionService.getByteArray
      */
-    public void setValue
+    public byte[] getByteArray
 	(final int entryPoint,
 	 final int[] path,
-	 final int value)
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	if(path.length > 0) {
-	    final int[] parent = new int[path.length - 1];
-	    System.arraycopy(path, 0, parent, 0, parent.length);
-	    if (value >= 0)
-	        set(browsePath(entryPoint, path).get(parent.length),
-		    resolvePath(entryPoint, parent),
-		    entryPoints.get(value));
-	    else
-		set(browsePath(entryPoint, path).get(parent.length),
-		    resolvePath(entryPoint, parent),
-		    null);
-	}
+	return (byte[])slice
+	    (primitiveArray(entryPoint, path, byte[].class), offset, length);
     }
 
     /**
-     * @see IInspectionService.getMethodName
+     * @see IInspectionService.setByteArray
      */
-    public String getMethodName
+    public void setByteArray
 	(final int entryPoint,
 	 final int[] path,
-	 final int method)
+	 final int offset,
+	 final byte[] values)
 	throws RemoteException
     {
-	return listMethods(resolvePath(entryPoint, path))
-	    .get(method)
-	    .toString();
+	store(primitiveArray(entryPoint, path, byte[].class), offset, values);
     }
 
     /**
-     * @see IInspectionService.getMethodParams
+     * @see IInspectionService.getShortArray
      */
-    public String[] getMethodParams
+    public int[] getShortArray
 	(final int entryPoint,
 	 final int[] path,
-	 final int method,
-	 final int[] parameters)
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	final Class<?>[] params = listMethods(resolvePath(entryPoint, path))
-	    .get(method)
-	    .getParameterTypes();
-	String[] result = new String[params.length];
-	for(int i = 0; i < params.length; i++) {
-	    result[i] = "";
-	    if(parameters.length == params.length) {
-		result[i] += (parameters[i] >= 0) ?
-		    entryPoints.get(parameters[i]).toString() : "-";
-		result[i] += SEPARATOR;
-	    }
-	    result[i] += params[i].getName();
-	}
+	/* There is no short on the wire, widen the slice */
+	final short[] s = (short[])slice
+	    (primitiveArray(entryPoint, path, short[].class), offset, length);
+	final int[] result = new int[s.length];
+	for(int i = 0; i < s.length; i++)
+	    result[i] = s[i];
 	return result;
     }
 
+    /**
+     * @see IInspectionService.setShortArray
+     */
+    public void setShortArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final int[] values)
+	throws RemoteException
+    {
+	final short[] s = new short[values.length];
+	for(int i = 0; i < s.length; i++)
+	    s[i] = (short)values[i];
+	store(primitiveArray(entryPoint, path, short[].class), offset, s);
+    }
 
     /**
-     * @see IInspectionService.invokeMethod
+     * @see IInspectionService.getCharArray
      */
-    public int invokeMethod
+    public char[] getCharArray
 	(final int entryPoint,
 	 final int[] path,
-	 final int method,
-	 final int[] paramsId)
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	/*
-	 * Fetch the method and prepare the parameters
-	 */
-	final Method m = listMethods(resolvePath(entryPoint, path))
-	    .get(method);
-	m.setAccessible(true);
-	final Object[] params = new Object[paramsId.length];
-	for(int i = 0; i < params.length; i++) {
-	    if (paramsId[i]<0)
-		params[i] = null;
-	    else
-	        params[i] = entryPoints.get(paramsId[i]);
-	}
-	/*
-	 * Call the method
-	 */
-	try {
-	    return invoke(resolvePath(entryPoint, path), m, params);
-	} catch (IllegalArgumentException e) {
-	    return -1;
-	}
+	return (char[])slice
+	    (primitiveArray(entryPoint, path, char[].class), offset, length);
     }
 
     /**
-     * @see IInspectionService.invokeMethodByName
+     * @see IInspectionService.setCharArray
      */
-    public int invokeMethodByName
+    public void setCharArray
 	(final int entryPoint,
 	 final int[] path,
-	 final String method,
-	 final int[] paramsId)
+	 final int offset,
+	 final char[] values)
 	throws RemoteException
     {
-	/* Build the parameters objects */
-	final Object[] params = new Object[paramsId.length];
-	for(int i = 0; i < params.length; i++) {
-	    if (paramsId[i]<0)
-		params[i] = null;
-	    else
-	        params[i] = entryPoints.get(paramsId[i]);
-	}
+	store(primitiveArray(entryPoint, path, char[].class), offset, values);
+    }
 
-	Object o = resolvePath(entryPoint, path);
-	/* Loop on methods with the same name and try all of them */
-	for (Method m : listMethods(o)) {
-	    if (m.getName().equals(method)) {
-		m.setAccessible(true);
-		try {
-		    return invoke(o, m, params);
-		} catch (IllegalArgumentException e) {
-		}
-	    }
-	}
-	return -2;
+    /**
+     * @see IInspectionService.getIntArray
+     */
+    public int[] getIntArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final int length)
+	throws RemoteException
+    {
+	return (int[])slice
+	    (primitiveArray(entryPoint, path, int[].class), offset, length);
     }
 
+    /**
+     * @see IInspectionService.setIntArray
+     */
+    public void setIntArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final int[] values)
+	throws RemoteException
+    {
+	store(primitiveArray(entryPoint, path, int[].class), offset, values);
+    }
 
     /**
-     * @see IInspectionService.isIterable
+     * @see IInspectionService.getLongArray
      */
-    public boolean isIterable
+    public long[] getLongArray
 	(final int entryPoint,
-	 final int[] path)
+	 final int[] path,
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	final Object o = resolvePath(entryPoint, path);
-	return o.getClass().isArray() || (o instanceof Iterable);
+	return (long[])slice
+	    (primitiveArray(entryPoint, path, long[].class), offset, length);
     }
 
     /**
-     * @see IInspectionService.listIterable
+     * @see IInspectionService.setLongArray
      */
-    public String[] getIterable
+    public void setLongArray
 	(final int entryPoint,
-	 final int[] path)
+	 final int[] path,
+	 final int offset,
+	 final long[] values)
 	throws RemoteException
     {
-	final Object o = resolvePath(entryPoint, path);
-	final Vector<String> result = new Vector<String>();
-	/*
-	 * For arrays, use array reflection API that allows browsing native
-	 * arrays
-	 */
-	if(o.getClass().isArray()) {
-	    for(int i = 0; i < Array.getLength(o); i++) {
-		final Object item = Array.get(o, i);
-		result.add(item.toString()
-			   + SEPARATOR
-			   + item.getClass().getName());
-	    }
-	}
-	/*
-	 * For any other iterable implementing the Java Interface, simply cast
-	 * and use Iterable methods
-	 */
-	else if(o instanceof Iterable<?>) {
-	    for(final Object i: (Iterable<?>) o) {
-		result.add(i.toString()
-			   + SEPARATOR
-			   + i.getClass().getName());
-	    }
-	}
-	return result.toArray(new String[result.size()]);
+	store(primitiveArray(entryPoint, path, long[].class), offset, values);
     }
 
     /**
-     * @see IInspectionService.getIterableItem
+     * @see IInspectionService.getFloatArray
      */
-    public int getIterableItem
+    public float[] getFloatArray
 	(final int entryPoint,
 	 final int[] path,
-	 final int item)
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	final Object o = resolvePath(entryPoint, path);
-	int result = 0;
-	if(o.getClass().isArray()) {
-	    result = pushObject(Array.get(o, item));
-	}
-	else if(o instanceof Iterable<?>) {
-	    final Iterator<?> it = ((Iterable<?>) o).iterator();
-	    Object r = null;
-	    for(int i = 0; i <= item; i++) {
-		r = it.next();
-	    }
-	    result = pushObject(r);
-	}
-	return result;
+	return (float[])slice
+	    (primitiveArray(entryPoint, path, float[].class), offset, length);
     }
 
     /**
-     * @see IInspectionService.pushString
+     * @see IInspectionService.setFloatArray
      */
-    public int pushString
-	(final String s)
+    public void setFloatArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final float[] values)
 	throws RemoteException
     {
-	return pushObject(s);
+	store(primitiveArray(entryPoint, path, float[].class), offset, values);
     }
 
     /**
-     * @see IInspectionService.pushInt
+     * @see IInspectionService.getDoubleArray
      */
-    public int pushInt
-	(final int i)
+    public double[] getDoubleArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final int length)
 	throws RemoteException
     {
-	return pushObject(i);
+	return (double[])slice
+	    (primitiveArray(entryPoint, path, double[].class), offset, length);
     }
 
     /**
-     * @see IInspectionService.pushBoolean
+     * @see IInspectionService.setDoubleArray
      */
-    public int pushBoolean
-	(final boolean b)
+    public void setDoubleArray
+	(final int entryPoint,
+	 final int[] path,
+	 final int offset,
+	 final double[] values)
+	throws RemoteException
+    {
+	store
+	    (primitiveArray(entryPoint, path, double[].class), offset, values);
+    }
+
+    /**
+     * @see IInspectionService.pushByte
+     */
+    public int pushByte
+	(final byte b)
 	throws RemoteException
     {
 	return pushObject(b);
     }
 
+    /**
+     * @see IInspectionService.pushChar
+     */
+    public int pushChar
+	(final char c)
+	throws RemoteException
+    {
+	return pushObject(c);
+    }
+
+    /**
+     * @see IInspectionService.pushShort
+     */
+    public int pushShort
+	(final int s)
+	throws RemoteException
+    {
+	return pushObject((short)s);
+    }
+
+    /**
+     * @see IInspectionService.pushLong
+     */
+    public int pushLong
+	(final long l)
+	throws RemoteException
+    {
+	return pushObject(l);
+    }
+
+    /**
+     * @see IInspectionService.pushFloat
+     */
+    public int pushFloat
+	(final float f)
+	throws RemoteException
+    {
+	return pushObject(f);
+    }
+
+    /**
+     * @see IInspectionService.pushDouble
+     */
+    public int pushDouble
+	(final double d)
+	throws RemoteException
+    {
+	return pushObject(d);
+    }
+
     /**
      * @see IInspectionService.push
      */
@@ -0,0 +1,434 @@
+package com.sysdream.fino;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.RemoteException;
+
+/**
+ * Bounded executor for asynchronous invocations.
+ *
+ * Slow invocations run on a small pool owned by the service instead of
+ * holding a binder thread. Every job gets an identifier that may be polled
+ * for its state, cancelled, or bound to a callback. The state of finished
+ * jobs is retained for a while so that clients may poll it.
+ *
+ * Every job belongs to the entry point register it was submitted from, whose
+ * handles it reports. Jobs may only be polled or cancelled through their
+ * owner, so that clients of other sessions cannot reach them by guessing
+ * identifiers, and every job of a register is cancelled along with its
+ * session.
+ *
+ * Job states are described as "<state>:<value>" where the value is the
+ * result entry point index for completed jobs and the error description for
+ * failed jobs.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Jobs
+{
+    /**
+     * Job is queued
+     */
+    public static final String PENDING = "pending";
+
+    /**
+     * Job is running
+     */
+    public static final String RUNNING = "running";
+
+    /**
+     * Job completed
+     */
+    public static final String DONE = "done";
+
+    /**
+     * Job threw an exception or was rejected
+     */
+    public static final String FAILED = "failed";
+
+    /**
+     * Job was cancelled by the client
+     */
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Job exceeded its timeout
+     */
+    public static final String TIMEOUT = "timeout";
+
+    /**
+     * Maximum number of retained jobs
+     */
+    static final int MAX_JOBS = 256;
+
+    /**
+     * Invocation pool
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Timeout watchdog
+     */
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    /**
+     * Whether cancelled timeouts are removed from the watchdog queue
+     * immediately, otherwise it is purged explicitly
+     */
+    private final boolean removeOnCancel;
+
+    /**
+     * Last job identifier
+     */
+    private final AtomicInteger lastJob = new AtomicInteger();
+
+    /**
+     * Retained jobs, by identifier, oldest first
+     */
+    private final LinkedHashMap<Integer, Job> jobs
+	= new LinkedHashMap<Integer, Job>() {
+	    protected boolean removeEldestEntry
+		(final Map.Entry<Integer, Job> eldest)
+	    {
+		return size() > MAX_JOBS;
+	    }
+	};
+
+    /**
+     * A single asynchronous invocation
+     */
+    private class Job
+	extends FutureTask<Integer>
+    {
+	/**
+	 * Job identifier
+	 */
+	final int id;
+
+	/**
+	 * Owning register
+	 */
+	final Object owner;
+
+	/**
+	 * Optional client callback
+	 */
+	final IInvocationCallback callback;
+
+	/**
+	 * Current state
+	 */
+	volatile String state = PENDING;
+
+	/**
+	 * Result or error description
+	 */
+	volatile String value = "";
+
+	/**
+	 * State to report if the job gets cancelled
+	 */
+	volatile String stopState = CANCELLED;
+
+	/**
+	 * Pending timeout, <code>null</code> if none
+	 */
+	volatile ScheduledFuture<?> timeout = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id the job identifier
+	 * @param owner the owning register
+	 * @param task the invocation
+	 * @param callback the client callback, may be <code>null</code>
+	 */
+	Job
+	    (final int id,
+	     final Object owner,
+	     final Callable<Integer> task,
+	     final IInvocationCallback callback)
+	{
+	    super(task);
+	    this.id = id;
+	    this.owner = owner;
+	    this.callback = callback;
+	}
+
+	/**
+	 * Mark the job as running before invoking
+	 */
+	public void run
+	    ()
+	{
+	    if(state == PENDING)
+		state = RUNNING;
+	    super.run();
+	}
+
+	/**
+	 * Record the outcome and notify the client
+	 */
+	protected void done
+	    ()
+	{
+	    cancelTimeout(this);
+	    int result = -1;
+	    if(isCancelled()) {
+		state = stopState;
+	    }
+	    else {
+		try {
+		    result = get();
+		    value = Integer.toString(result);
+		    state = DONE;
+		} catch (ExecutionException e) {
+		    value = String.valueOf(e.getCause());
+		    state = FAILED;
+		} catch (InterruptedException e) {
+		    value = e.toString();
+		    state = FAILED;
+		}
+	    }
+	    notifyClient(this, result);
+	}
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threads the maximum number of concurrent invocations
+     * @param queue the maximum number of queued invocations
+     */
+    public Jobs
+	(final int threads,
+	 final int queue)
+    {
+	final ThreadFactory factory = new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(final Runnable r) {
+		    final Thread t = new Thread
+			(r, "fino-job-" + count.incrementAndGet());
+		    t.setDaemon(true);
+		    return t;
+		}
+	    };
+	executor = new ThreadPoolExecutor
+	    (threads, threads, 30, TimeUnit.SECONDS,
+	     new ArrayBlockingQueue<Runnable>(queue), factory);
+	executor.allowCoreThreadTimeOut(true);
+	watchdog = new ScheduledThreadPoolExecutor(1, factory);
+	/*
+	 * Drop cancelled timeouts, that reference their job, as soon as the
+	 * job finishes; the policy is only available from API 21
+	 */
+	boolean removing = false;
+	try {
+	    ScheduledThreadPoolExecutor.class
+		.getMethod("setRemoveOnCancelPolicy", boolean.class)
+		.invoke(watchdog, true);
+	    removing = true;
+	} catch (Exception e) {
+	}
+	removeOnCancel = removing;
+    }
+
+    /**
+     * Cancel the pending timeout of a finished job, if any.
+     *
+     * @param job the job
+     */
+    private void cancelTimeout
+	(final Job job)
+    {
+	final ScheduledFuture<?> t = job.timeout;
+	if(t == null)
+	    return;
+	job.timeout = null;
+	t.cancel(false);
+	if(!removeOnCancel)
+	    watchdog.purge();
+    }
+
+    /**
+     * Notify the client callback of a job outcome, if any.
+     *
+     * @param job the finished job
+     * @param result the result entry point index
+     */
+    private void notifyClient
+	(final Job job,
+	 final int result)
+    {
+	if(job.callback == null)
+	    return;
+	try {
+	    if(job.state == DONE)
+		job.callback.onResult(job.id, result);
+	    else
+		job.callback.onError
+		    (job.id, job.state + InspectionStub.SEPARATOR + job.value);
+	} catch (RemoteException e) {
+	    /* The client is gone, the state may still be polled */
+	}
+    }
+
+    /**
+     * Submit an invocation.
+     *
+     * @param owner the register the result is pushed to
+     * @param task the invocation, returning an entry point index
+     * @param timeout the timeout in milliseconds, 0 for none
+     * @param callback the client callback, may be <code>null</code>
+     * @return the job identifier
+     */
+    public int submit
+	(final Object owner,
+	 final Callable<Integer> task,
+	 final long timeout,
+	 final IInvocationCallback callback)
+    {
+	final Job job
+	    = new Job(lastJob.incrementAndGet(), owner, task, callback);
+	synchronized(jobs) {
+	    jobs.put(job.id, job);
+	}
+	try {
+	    executor.execute(job);
+	} catch (RejectedExecutionException e) {
+	    job.state = FAILED;
+	    job.value = "rejected";
+	    notifyClient(job, -1);
+	    return job.id;
+	}
+	if(timeout > 0) {
+	    job.timeout = watchdog.schedule(new Runnable() {
+		    public void run() {
+			stop(job, TIMEOUT);
+		    }
+		}, timeout, TimeUnit.MILLISECONDS);
+	    /* The job may have finished before its timeout was set */
+	    if(job.isDone())
+		cancelTimeout(job);
+	}
+	return job.id;
+    }
+
+    /**
+     * Stop a job, interrupting it if it is running.
+     *
+     * @param job the job
+     * @param state the final state
+     * @return <code>true</code> if the job was stopped
+     */
+    private boolean stop
+	(final Job job,
+	 final String state)
+    {
+	if(job.isDone())
+	    return false;
+	job.stopState = state;
+	final boolean stopped = job.cancel(true);
+	executor.remove(job);
+	return stopped;
+    }
+
+    /**
+     * Find a retained job of a given owner.
+     *
+     * @param owner the owning register
+     * @param id the job identifier
+     * @return the job, or <code>null</code> if unknown, forgotten or owned
+     *         by another register
+     */
+    private Job find
+	(final Object owner,
+	 final int id)
+    {
+	final Job job;
+	synchronized(jobs) {
+	    job = jobs.get(id);
+	}
+	return (job == null || job.owner != owner) ? null : job;
+    }
+
+    /**
+     * Get a job state.
+     *
+     * @param owner the owning register
+     * @param id the job identifier
+     * @return the state as "<state>:<value>", or <code>null</code> if the
+     *         job is unknown, was forgotten or belongs to another register
+     */
+    public String status
+	(final Object owner,
+	 final int id)
+    {
+	final Job job = find(owner, id);
+	return (job == null) ? null
+	    : job.state + InspectionStub.SEPARATOR + job.value;
+    }
+
+    /**
+     * Cancel a job, interrupting it if it is running.
+     *
+     * @param owner the owning register
+     * @param id the job identifier
+     * @return <code>true</code> if the job was cancelled
+     */
+    public boolean cancel
+	(final Object owner,
+	 final int id)
+    {
+	final Job job = find(owner, id);
+	return (job != null) && stop(job, CANCELLED);
+    }
+
+    /**
+     * Cancel and forget every job of an owner, once its session is closed.
+     *
+     * @param owner the owning register
+     */
+    public void cancelAll
+	(final Object owner)
+    {
+	final ArrayList<Job> owned = new ArrayList<Job>();
+	synchronized(jobs) {
+	    final Iterator<Job> i = jobs.values().iterator();
+	    while(i.hasNext()) {
+		final Job job = i.next();
+		if(job.owner == owner) {
+		    owned.add(job);
+		    i.remove();
+		}
+	    }
+	}
+	for(final Job job: owned)
+	    stop(job, CANCELLED);
+    }
+
+    /**
+     * Stop every pool thread.
+     */
+    public void shutdown
+	()
+    {
+	executor.shutdownNow();
+	watchdog.shutdownNow();
+    }
+}
@@ -0,0 +1,305 @@
+package com.sysdream.fino;
+
+/**
+ * Timeline of activity lifecycle events.
+ *
+ * Events are timestamped with the monotonic clock and kept in a fixed-size
+ * ring, oldest events being overwritten. The ring is made of primitive and
+ * class arrays allocated once, so that recording an event never allocates:
+ * activities are identified by their class and identity hash code, without
+ * holding references to them.
+ *
+ * Create to resume latencies are summarized per activity class: the resume
+ * following the creation of an instance is matched through a small table of
+ * pending creations.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class LifecycleTimeline
+{
+    /**
+     * Event kinds
+     */
+    public static final int CREATED = 0;
+    public static final int STARTED = 1;
+    public static final int RESUMED = 2;
+    public static final int PAUSED = 3;
+    public static final int STOPPED = 4;
+    public static final int SAVED = 5;
+    public static final int DESTROYED = 6;
+
+    /**
+     * Event names, by kind
+     */
+    static final String[] NAMES = {
+	"created", "started", "resumed", "paused", "stopped", "saved",
+	"destroyed"
+    };
+
+    /**
+     * Number of events kept
+     */
+    static final int CAPACITY = 1024;
+
+    /**
+     * Maximum number of creations awaiting their resume
+     */
+    static final int MAX_PENDING = 32;
+
+    /**
+     * Maximum number of summarized activity classes
+     */
+    static final int MAX_CLASSES = 64;
+
+    /**
+     * Event timestamps, in nanoseconds
+     */
+    private final long[] times = new long[CAPACITY];
+
+    /**
+     * Event kinds
+     */
+    private final int[] kinds = new int[CAPACITY];
+
+    /**
+     * Activity identity hash codes
+     */
+    private final int[] instances = new int[CAPACITY];
+
+    /**
+     * Activity classes
+     */
+    private final Class<?>[] classes = new Class<?>[CAPACITY];
+
+    /**
+     * Total number of recorded events
+     */
+    private long count = 0;
+
+    /**
+     * Instances created and not resumed yet, 0 for free slots
+     */
+    private final int[] pendingInstances = new int[MAX_PENDING];
+
+    /**
+     * Creation timestamps of pending instances
+     */
+    private final long[] pendingTimes = new long[MAX_PENDING];
+
+    /**
+     * Summarized classes
+     */
+    private final Class<?>[] summaryClasses = new Class<?>[MAX_CLASSES];
+
+    /**
+     * Number of summarized latencies, by class
+     */
+    private final int[] latencyCounts = new int[MAX_CLASSES];
+
+    /**
+     * Latency sums, minimums and maximums, by class, in nanoseconds
+     */
+    private final long[] latencyTotals = new long[MAX_CLASSES];
+    private final long[] latencyMins = new long[MAX_CLASSES];
+    private final long[] latencyMaxs = new long[MAX_CLASSES];
+
+    /**
+     * Record an event.
+     *
+     * @param kind the event kind
+     * @param activity the activity
+     */
+    public synchronized void record
+	(final int kind,
+	 final Object activity)
+    {
+	final long time = System.nanoTime();
+	final int instance = System.identityHashCode(activity);
+	final int slot = (int)(count % CAPACITY);
+	times[slot] = time;
+	kinds[slot] = kind;
+	instances[slot] = instance;
+	classes[slot] = activity.getClass();
+	count++;
+	/* Pending slots are free when 0, identity hash codes never are */
+	final int key = (instance == 0) ? 1 : instance;
+	if(kind == CREATED)
+	    created(key, time);
+	else if(kind == RESUMED)
+	    resumed(key, activity.getClass(), time);
+	else if(kind == DESTROYED)
+	    forget(key);
+    }
+
+    /**
+     * Remember a creation, replacing any pending creation of the same
+     * instance, or else the first free slot, or else the oldest one.
+     *
+     * @param key the activity identity hash code
+     * @param time the creation time
+     */
+    private void created
+	(final int key,
+	 final long time)
+    {
+	int slot = -1;
+	int oldest = 0;
+	for(int i = 0; i < MAX_PENDING; i++) {
+	    if(pendingInstances[i] == key) {
+		slot = i;
+		break;
+	    }
+	    if(slot < 0 && pendingInstances[i] == 0)
+		slot = i;
+	    if(pendingTimes[i] < pendingTimes[oldest])
+		oldest = i;
+	}
+	if(slot < 0)
+	    slot = oldest;
+	pendingInstances[slot] = key;
+	pendingTimes[slot] = time;
+    }
+
+    /**
+     * Summarize the latency of a pending creation, if any.
+     *
+     * @param key the activity identity hash code
+     * @param type the activity class
+     * @param time the resume time
+     */
+    private void resumed
+	(final int key,
+	 final Class<?> type,
+	 final long time)
+    {
+	for(int i = 0; i < MAX_PENDING; i++) {
+	    if(pendingInstances[i] != key)
+		continue;
+	    pendingInstances[i] = 0;
+	    final long latency = time - pendingTimes[i];
+	    int c = 0;
+	    while(c < MAX_CLASSES && summaryClasses[c] != null
+		  && summaryClasses[c] != type)
+		c++;
+	    if(c == MAX_CLASSES)
+		return;
+	    if(summaryClasses[c] == null) {
+		summaryClasses[c] = type;
+		latencyMins[c] = latency;
+		latencyMaxs[c] = latency;
+	    }
+	    latencyCounts[c]++;
+	    latencyTotals[c] += latency;
+	    latencyMins[c] = Math.min(latencyMins[c], latency);
+	    latencyMaxs[c] = Math.max(latencyMaxs[c], latency);
+	    return;
+	}
+    }
+
+    /**
+     * Drop a pending creation, for activities destroyed before resuming.
+     *
+     * @param key the activity identity hash code
+     */
+    private void forget
+	(final int key)
+    {
+	for(int i = 0; i < MAX_PENDING; i++) {
+	    if(pendingInstances[i] == key)
+		pendingInstances[i] = 0;
+	}
+    }
+
+    /**
+     * Describe recorded events.
+     *
+     * The first row is "<recorded>:<dropped>", the total number of events
+     * and the number of them overwritten, then one
+     * "<sequence>:<time>:<event>:<instance>:<class>" row per event, oldest
+     * first, with the time in nanoseconds and the instance as an hexadecimal
+     * identity hash code.
+     *
+     * @param since the sequence number to start from, 0 for every event
+     * @return the timeline
+     */
+    public String[] getTimeline
+	(final long since)
+    {
+	/* Snapshot under the lock, format without blocking recording */
+	final long total;
+	final long first;
+	final long[] t;
+	final int[] k;
+	final int[] n;
+	final Class<?>[] c;
+	synchronized(this) {
+	    total = count;
+	    first = Math.max(Math.max(0, since), count - CAPACITY);
+	    final int rows = (int)Math.max(0, count - first);
+	    t = new long[rows];
+	    k = new int[rows];
+	    n = new int[rows];
+	    c = new Class<?>[rows];
+	    for(int i = 0; i < rows; i++) {
+		final int slot = (int)((first + i) % CAPACITY);
+		t[i] = times[slot];
+		k[i] = kinds[slot];
+		n[i] = instances[slot];
+		c[i] = classes[slot];
+	    }
+	}
+	final String[] result = new String[t.length + 1];
+	result[0] = total + InspectionStub.SEPARATOR
+	    + Math.max(0, total - CAPACITY);
+	for(int i = 0; i < t.length; i++) {
+	    result[i + 1] = (first + i)
+		+ InspectionStub.SEPARATOR + t[i]
+		+ InspectionStub.SEPARATOR + NAMES[k[i]]
+		+ InspectionStub.SEPARATOR + Integer.toHexString(n[i])
+		+ InspectionStub.SEPARATOR + c[i].getName();
+	}
+	return result;
+    }
+
+    /**
+     * Describe create to resume latencies.
+     *
+     * @return one "<class>:<count>:<min>:<mean>:<max>" row per activity
+     *         class, latencies in nanoseconds
+     */
+    public String[] getLatencies
+	()
+    {
+	final Class<?>[] c;
+	final int[] n;
+	final long[] totals;
+	final long[] mins;
+	final long[] maxs;
+	synchronized(this) {
+	    int classCount = 0;
+	    while(classCount < MAX_CLASSES
+		  && summaryClasses[classCount] != null)
+		classCount++;
+	    c = new Class<?>[classCount];
+	    System.arraycopy(summaryClasses, 0, c, 0, classCount);
+	    n = new int[classCount];
+	    System.arraycopy(latencyCounts, 0, n, 0, classCount);
+	    totals = new long[classCount];
+	    System.arraycopy(latencyTotals, 0, totals, 0, classCount);
+	    mins = new long[classCount];
+	    System.arraycopy(latencyMins, 0, mins, 0, classCount);
+	    maxs = new long[classCount];
+	    System.arraycopy(latencyMaxs, 0, maxs, 0, classCount);
+	}
+	final String[] result = new String[c.length];
+	for(int i = 0; i < c.length; i++) {
+	    result[i] = c[i].getName()
+		+ InspectionStub.SEPARATOR + n[i]
+		+ InspectionStub.SEPARATOR + mins[i]
+		+ InspectionStub.SEPARATOR + totals[i] / n[i]
+		+ InspectionStub.SEPARATOR + maxs[i];
+	}
+	return result;
+    }
+}
@@ -0,0 +1,417 @@
+package com.sysdream.fino;
+
+import java.lang.reflect.Field;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Printer;
+
+/**
+ * Monitor of the messages dispatched by the main looper.
+ *
+ * The main looper logs every dispatched message, before and after running
+ * it, to its message logging printer; the monitor installs itself as that
+ * printer and measures the duration of each message. Durations are counted
+ * in a histogram of power of two buckets, and messages lasting at least a
+ * threshold are kept in a ring of slow messages along with their target
+ * handler and callback.
+ *
+ * A watchdog thread is armed for every message and captures the stack of the
+ * main thread once the message runs past the threshold, that is while it is
+ * still running, so that slow messages are kept with the stack that caused
+ * them.
+ *
+ * Since the main looper has a single printer, any printer previously set by
+ * the application is read reflectively, called for every line while
+ * monitoring, and restored when stopping. Where the looper field cannot be
+ * read, the application printer is not forwarded to and is cleared when
+ * stopping.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class LooperMonitor
+    implements Printer
+{
+    /**
+     * Result key of the number of dispatched messages
+     */
+    public static final String MESSAGES = "messages";
+
+    /**
+     * Result key of the total dispatch time, in milliseconds
+     */
+    public static final String TOTAL = "total";
+
+    /**
+     * Result key of the histogram bucket upper bounds, in milliseconds, the
+     * last bucket being unbounded
+     */
+    public static final String BOUNDS = "bounds";
+
+    /**
+     * Result key of the histogram bucket counts
+     */
+    public static final String COUNTS = "counts";
+
+    /**
+     * Result key of the slow messages
+     */
+    public static final String SLOW = "slow";
+
+    /**
+     * Number of histogram buckets, from below 1 millisecond to 1 second and
+     * more
+     */
+    static final int BUCKETS = 12;
+
+    /**
+     * Number of slow messages kept
+     */
+    static final int MAX_SLOW = 64;
+
+    /**
+     * Maximum depth of captured stacks
+     */
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * Main looper dispatch log prefix
+     */
+    private static final String DISPATCHING = ">>>>> Dispatching to ";
+
+    /**
+     * Message counts, by bucket
+     */
+    private final int[] counts = new int[BUCKETS];
+
+    /**
+     * Number of dispatched messages
+     */
+    private int messages = 0;
+
+    /**
+     * Total dispatch time, in milliseconds
+     */
+    private long total = 0;
+
+    /**
+     * Slow message dispatch times, in milliseconds of uptime
+     */
+    private final long[] slowTimes = new long[MAX_SLOW];
+
+    /**
+     * Slow message durations, in milliseconds
+     */
+    private final int[] slowDurations = new int[MAX_SLOW];
+
+    /**
+     * Slow message targets, as logged by the looper
+     */
+    private final String[] slowTargets = new String[MAX_SLOW];
+
+    /**
+     * Slow message stacks, <code>null</code> if not captured in time
+     */
+    private final StackTraceElement[][] slowStacks
+	= new StackTraceElement[MAX_SLOW][];
+
+    /**
+     * Total number of slow messages
+     */
+    private int slow = 0;
+
+    /**
+     * Slow message threshold, in milliseconds
+     */
+    private volatile int threshold;
+
+    /**
+     * Watchdog thread, <code>null</code> when stopped
+     */
+    private HandlerThread watchdog = null;
+
+    /**
+     * Watchdog handler, <code>null</code> when stopped
+     */
+    private volatile Handler handler = null;
+
+    /**
+     * Printer set before monitoring, <code>null</code> if none or unknown
+     */
+    private volatile Printer previous = null;
+
+    /**
+     * Generation of the message being dispatched, odd while dispatching
+     */
+    private volatile int generation = 0;
+
+    /**
+     * Start time of the message being dispatched
+     */
+    private long start;
+
+    /**
+     * Target of the message being dispatched
+     */
+    private String target;
+
+    /**
+     * Generation of the last captured stack
+     */
+    private volatile int capturedGeneration = 0;
+
+    /**
+     * Last captured stack
+     */
+    private volatile StackTraceElement[] captured = null;
+
+    /**
+     * Capture the main thread stack if the same message is still running.
+     */
+    private final Runnable capture = new Runnable() {
+	    public void run() {
+		final int g = generation;
+		if((g & 1) == 0)
+		    return;
+		final StackTraceElement[] stack
+		    = Looper.getMainLooper().getThread().getStackTrace();
+		if(generation != g)
+		    return;
+		captured = stack;
+		capturedGeneration = g;
+	    }
+	};
+
+    /**
+     * Start monitoring, discarding any previous data.
+     *
+     * @param threshold the slow message threshold, in milliseconds
+     * @return <code>false</code> if the monitor is already running
+     */
+    public synchronized boolean start
+	(final int threshold)
+    {
+	if(watchdog != null)
+	    return false;
+	reset();
+	this.threshold = Math.max(1, threshold);
+	watchdog = new HandlerThread("fino-looper-watchdog");
+	watchdog.setDaemon(true);
+	watchdog.start();
+	handler = new Handler(watchdog.getLooper());
+	final Looper main = Looper.getMainLooper();
+	final Printer p = getMessageLogging(main);
+	previous = (p == this) ? null : p;
+	main.setMessageLogging(this);
+	return true;
+    }
+
+    /**
+     * Read the message logging printer of a looper.
+     *
+     * @param looper the looper
+     * @return the printer, or <code>null</code> if none or unreadable
+     */
+    private static Printer getMessageLogging
+	(final Looper looper)
+    {
+	try {
+	    final Field f = Looper.class.getDeclaredField("mLogging");
+	    f.setAccessible(true);
+	    return (Printer)f.get(looper);
+	} catch (Exception e) {
+	    /* Hidden or renamed on this platform */
+	    return null;
+	}
+    }
+
+    /**
+     * Stop monitoring, keeping the data.
+     *
+     * @return <code>false</code> if the monitor was not running
+     */
+    public synchronized boolean stop
+	()
+    {
+	if(watchdog == null)
+	    return false;
+	final Looper main = Looper.getMainLooper();
+	/* Keep any printer the application set while monitoring */
+	final Printer p = getMessageLogging(main);
+	if(p == this || p == null)
+	    main.setMessageLogging(previous);
+	previous = null;
+	handler = null;
+	watchdog.quit();
+	watchdog = null;
+	return true;
+    }
+
+    /**
+     * Discard the data.
+     */
+    private void reset
+	()
+    {
+	for(int i = 0; i < BUCKETS; i++)
+	    counts[i] = 0;
+	for(int i = 0; i < MAX_SLOW; i++) {
+	    slowTargets[i] = null;
+	    slowStacks[i] = null;
+	}
+	messages = 0;
+	total = 0;
+	slow = 0;
+    }
+
+    /**
+     * Called by the main looper before and after dispatching each message.
+     *
+     * @param x the log line
+     */
+    public void println
+	(final String x)
+    {
+	final Printer p = previous;
+	final Handler h = handler;
+	if(h == null || x.length() == 0) {
+	    if(p != null)
+		p.println(x);
+	    return;
+	}
+	if(x.charAt(0) == '>') {
+	    /* Forward first, so that the message is timed alone */
+	    if(p != null)
+		p.println(x);
+	    target = x;
+	    start = SystemClock.uptimeMillis();
+	    /* Odd even if monitoring was restarted during a dispatch */
+	    generation = (generation + 2) | 1;
+	    h.removeCallbacks(capture);
+	    h.postDelayed(capture, threshold);
+	    return;
+	}
+	if((generation & 1) == 0) {
+	    if(p != null)
+		p.println(x);
+	    return;
+	}
+	final long end = SystemClock.uptimeMillis();
+	final int g = generation;
+	generation = g + 1;
+	h.removeCallbacks(capture);
+	if(p != null)
+	    p.println(x);
+	finished(start, (int)(end - start), target,
+		 (capturedGeneration == g) ? captured : null);
+    }
+
+    /**
+     * Count a dispatched message.
+     *
+     * @param time the dispatch time
+     * @param duration the dispatch duration
+     * @param message the dispatch log line
+     * @param stack the captured stack, or <code>null</code>
+     */
+    private synchronized void finished
+	(final long time,
+	 final int duration,
+	 final String message,
+	 final StackTraceElement[] stack)
+    {
+	int bucket = 0;
+	while(bucket < BUCKETS - 1 && duration >= (1 << bucket))
+	    bucket++;
+	counts[bucket]++;
+	messages++;
+	total += duration;
+	if(duration < threshold)
+	    return;
+	final int slot = slow % MAX_SLOW;
+	slowTimes[slot] = time;
+	slowDurations[slot] = duration;
+	slowTargets[slot] = message.startsWith(DISPATCHING)
+	    ? message.substring(DISPATCHING.length()) : message;
+	slowStacks[slot] = stack;
+	slow++;
+    }
+
+    /**
+     * Describe the monitored messages.
+     *
+     * Slow messages are described as "<time>:<duration>:<stack>:<target>"
+     * rows, oldest first, with the stack from root to leaf as
+     * "<class>.<method>" frames joined with ";", empty if the message ended
+     * before the stack was captured.
+     *
+     * @param reset whether to discard the data once described
+     * @return the message count, total time, histogram and slow messages
+     */
+    public Bundle getStats
+	(final boolean reset)
+    {
+	/* Copy under the lock, format without blocking the main thread */
+	final int messageCount;
+	final long totalTime;
+	final int[] countsCopy;
+	final long[] times;
+	final int[] durations;
+	final String[] targets;
+	final StackTraceElement[][] stacks;
+	synchronized(this) {
+	    messageCount = messages;
+	    totalTime = total;
+	    countsCopy = counts.clone();
+	    final int first = Math.max(0, slow - MAX_SLOW);
+	    final int rows = slow - first;
+	    times = new long[rows];
+	    durations = new int[rows];
+	    targets = new String[rows];
+	    stacks = new StackTraceElement[rows][];
+	    for(int i = 0; i < rows; i++) {
+		final int slot = (first + i) % MAX_SLOW;
+		times[i] = slowTimes[slot];
+		durations[i] = slowDurations[slot];
+		targets[i] = slowTargets[slot];
+		stacks[i] = slowStacks[slot];
+	    }
+	    if(reset)
+		reset();
+	}
+	final Bundle result = new Bundle();
+	result.putInt(MESSAGES, messageCount);
+	result.putLong(TOTAL, totalTime);
+	final int[] bounds = new int[BUCKETS];
+	for(int i = 0; i < BUCKETS - 1; i++)
+	    bounds[i] = 1 << i;
+	bounds[BUCKETS - 1] = -1;
+	result.putIntArray(BOUNDS, bounds);
+	result.putIntArray(COUNTS, countsCopy);
+	final String[] rows = new String[times.length];
+	final StringBuilder b = new StringBuilder();
+	for(int i = 0; i < rows.length; i++) {
+	    b.setLength(0);
+	    b.append(times[i]).append(InspectionStub.SEPARATOR)
+		.append(durations[i]).append(InspectionStub.SEPARATOR);
+	    final StackTraceElement[] stack = stacks[i];
+	    if(stack != null) {
+		final int depth = Math.min(stack.length, MAX_DEPTH);
+		for(int j = depth - 1; j >= 0; j--) {
+		    b.append(stack[j].getClassName()).append('.')
+			.append(stack[j].getMethodName());
+		    if(j > 0)
+			b.append(';');
+		}
+	    }
+	    b.append(InspectionStub.SEPARATOR).append(targets[i]);
+	    rows[i] = b.toString();
+	}
+	result.putStringArray(SLOW, rows);
+	return result;
+    }
+}
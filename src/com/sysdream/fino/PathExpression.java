@@ -0,0 +1,235 @@
+package com.sysdream.fino;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Name-based path from an entry point to a reference.
+ *
+ * Expressions are dot-separated field names, optionally followed by
+ * subscripts:
+ *
+ *   mAdapter.mItems[3].mTitle
+ *   mCache["session"].mToken
+ *
+ * An integer subscript indexes arrays, lists and any other
+ * <code>Iterable</code>, or is used as an <code>Integer</code> key on maps. A
+ * quoted subscript is used as a <code>String</code> key on maps. Field names
+ * are resolved through the <code>FieldIndex</code> cache, so that resolving
+ * does not depend on the order in which fields are listed.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class PathExpression
+{
+    /**
+     * Field access step
+     */
+    private static final int FIELD = 0;
+
+    /**
+     * Integer subscript step
+     */
+    private static final int INDEX = 1;
+
+    /**
+     * String subscript step
+     */
+    private static final int KEY = 2;
+
+    /**
+     * Step kinds
+     */
+    private final int[] kinds;
+
+    /**
+     * Step arguments, either field names, <code>Integer</code> indices or
+     * <code>String</code> keys
+     */
+    private final Object[] arguments;
+
+    /**
+     * Parse an expression.
+     *
+     * @param expression the expression
+     * @throws IllegalArgumentException if the expression is misformed
+     */
+    public PathExpression
+	(final String expression)
+	throws IllegalArgumentException
+    {
+	final List<Integer> k = new ArrayList<Integer>();
+	final List<Object> a = new ArrayList<Object>();
+	final int length = expression.length();
+	int i = 0;
+	while(i < length) {
+	    final char c = expression.charAt(i);
+	    if(c == '.') {
+		/* A separator must be followed by a field name */
+		if(k.isEmpty() || i + 1 >= length
+		   || expression.charAt(i + 1) == '.'
+		   || expression.charAt(i + 1) == '[')
+		    throw new IllegalArgumentException
+			("Unexpected '.' at " + i + " in " + expression);
+		i++;
+	    }
+	    else if(c == '[') {
+		final int end = subscriptEnd(expression, i);
+		final String s = expression.substring(i + 1, end).trim();
+		if(s.length() >= 2 && s.charAt(0) == '"'
+		   && s.charAt(s.length() - 1) == '"') {
+		    k.add(KEY);
+		    a.add(s.substring(1, s.length() - 1));
+		}
+		else {
+		    try {
+			a.add(Integer.valueOf(s));
+			k.add(INDEX);
+		    }
+		    catch(final NumberFormatException e) {
+			throw new IllegalArgumentException
+			    ("Invalid subscript '" + s + "' in " + expression);
+		    }
+		}
+		i = end + 1;
+		continue;
+	    }
+	    /* Field name, up to the next separator or subscript */
+	    if(!k.isEmpty() && expression.charAt(i - 1) != '.')
+		/* Only reached right after a subscript, as in "a[0]b" */
+		throw new IllegalArgumentException
+		    ("Missing '.' at " + i + " in " + expression);
+	    int end = i;
+	    while(end < length && expression.charAt(end) != '.'
+		  && expression.charAt(end) != '[')
+		end++;
+	    final String name = expression.substring(i, end).trim();
+	    if(name.length() == 0)
+		throw new IllegalArgumentException
+		    ("Missing field name at " + i + " in " + expression);
+	    k.add(FIELD);
+	    a.add(name);
+	    i = end;
+	}
+	kinds = new int[k.size()];
+	for(int j = 0; j < kinds.length; j++)
+	    kinds[j] = k.get(j);
+	arguments = a.toArray();
+    }
+
+    /**
+     * Find the closing bracket of a subscript, honoring quoted keys.
+     *
+     * @param expression the expression
+     * @param start index of the opening bracket
+     * @return index of the closing bracket
+     */
+    private static int subscriptEnd
+	(final String expression,
+	 final int start)
+    {
+	boolean quoted = false;
+	for(int i = start + 1; i < expression.length(); i++) {
+	    final char c = expression.charAt(i);
+	    if(c == '"')
+		quoted = !quoted;
+	    else if(c == ']' && !quoted)
+		return i;
+	}
+	throw new IllegalArgumentException
+	    ("Unterminated subscript at " + start + " in " + expression);
+    }
+
+    /**
+     * Resolve the expression from a root object.
+     *
+     * @param root the root object, usually an entry point
+     * @return the referenced object, possibly <code>null</code>
+     * @throws IllegalArgumentException if a step cannot be applied
+     */
+    public Object resolve
+	(final Object root)
+	throws IllegalArgumentException
+    {
+	Object o = root;
+	for(int i = 0; i < kinds.length; i++) {
+	    if(o == null)
+		throw new IllegalArgumentException
+		    ("Null reference before step " + i);
+	    switch(kinds[i]) {
+	    case FIELD:
+		final Field f = FieldIndex.lookup
+		    (FieldIndex.classOf(o), (String)arguments[i]);
+		if(f == null)
+		    throw new IllegalArgumentException
+			("No field " + arguments[i] + " in "
+			 + FieldIndex.classOf(o).getName());
+		o = InspectionStub.get(f, o);
+		break;
+	    case INDEX:
+		o = item(o, (Integer)arguments[i]);
+		break;
+	    default:
+		o = key(o, arguments[i]);
+		break;
+	    }
+	}
+	return o;
+    }
+
+    /**
+     * Get an item from an indexable object.
+     *
+     * @param o an array, a list, an iterable or a map
+     * @param index the item index
+     * @return the item
+     */
+    private static Object item
+	(final Object o,
+	 final int index)
+    {
+	if(o instanceof Map<?, ?>)
+	    return key(o, index);
+	try {
+	    if(o.getClass().isArray())
+		return Array.get(o, index);
+	    if(o instanceof List<?>)
+		return ((List<?>)o).get(index);
+	}
+	catch(final IndexOutOfBoundsException e) {
+	    throw new IllegalArgumentException(e.toString());
+	}
+	if(o instanceof Iterable<?> && index >= 0) {
+	    final Iterator<?> it = ((Iterable<?>)o).iterator();
+	    for(int i = 0; i < index && it.hasNext(); i++)
+		it.next();
+	    if(it.hasNext())
+		return it.next();
+	    throw new IllegalArgumentException("Index out of range: " + index);
+	}
+	throw new IllegalArgumentException
+	    ("Not indexable: " + o.getClass().getName());
+    }
+
+    /**
+     * Get a value from a map.
+     *
+     * @param o the map
+     * @param key the key
+     * @return the mapped value
+     */
+    private static Object key
+	(final Object o,
+	 final Object key)
+    {
+	if(!(o instanceof Map<?, ?>))
+	    throw new IllegalArgumentException
+		("Not a map: " + o.getClass().getName());
+	return ((Map<?, ?>)o).get(key);
+    }
+}
@@ -0,0 +1,277 @@
+package com.sysdream.fino;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.Looper;
+
+/**
+ * Sampling profiler for the threads of the inspected application.
+ *
+ * A background thread periodically captures the stack of the main thread,
+ * or of every thread, and counts identical stacks. Frames are interned as
+ * integers and stacks are stored as frame identifier arrays, so that memory
+ * only grows with the number of distinct stacks, which is bounded: once the
+ * table is full, new stacks are counted under a single "[truncated]" stack.
+ *
+ * Profiles are described as folded stacks, as expected by flame graph
+ * tools: frames from the root to the leaf joined with ";", a space, and the
+ * number of samples. When every thread is sampled, the thread name is the
+ * root frame.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Profiler
+{
+    /**
+     * Minimum sampling interval, in milliseconds
+     */
+    static final int MIN_INTERVAL = 1;
+
+    /**
+     * Maximum number of distinct stacks
+     */
+    static final int MAX_STACKS = 8192;
+
+    /**
+     * Maximum number of distinct frames
+     */
+    static final int MAX_FRAMES = 16384;
+
+    /**
+     * Maximum stack depth, deeper frames are dropped from the root side
+     */
+    static final int MAX_DEPTH = 128;
+
+    /**
+     * Stack of samples that did not fit in the table
+     */
+    static final String TRUNCATED = "[truncated]";
+
+    /**
+     * Frame standing for frames that did not fit in the table
+     */
+    static final String UNKNOWN = "[unknown]";
+
+    /**
+     * Stack, as frame identifiers from the root to the leaf
+     */
+    private static final class Stack
+    {
+	/**
+	 * Frame identifiers
+	 */
+	final int[] frames;
+
+	/**
+	 * Cached hash code
+	 */
+	final int hash;
+
+	/**
+	 * Constructor
+	 *
+	 * @param frames the frame identifiers
+	 */
+	Stack
+	    (final int[] frames)
+	{
+	    this.frames = frames;
+	    this.hash = Arrays.hashCode(frames);
+	}
+
+	public int hashCode
+	    ()
+	{
+	    return hash;
+	}
+
+	public boolean equals
+	    (final Object o)
+	{
+	    return (o instanceof Stack) && Arrays.equals(frames, ((Stack)o).frames);
+	}
+    }
+
+    /**
+     * Frame identifiers, by frame name
+     */
+    private final HashMap<String, Integer> frameIds
+	= new HashMap<String, Integer>();
+
+    /**
+     * Frame names, by identifier
+     */
+    private final ArrayList<String> frames = new ArrayList<String>();
+
+    /**
+     * Sample counts, by stack
+     */
+    private final HashMap<Stack, int[]> stacks = new HashMap<Stack, int[]>();
+
+    /**
+     * Total number of samples
+     */
+    private int samples = 0;
+
+    /**
+     * Sampling thread, <code>null</code> when stopped
+     */
+    private Thread sampler = null;
+
+    /**
+     * Start sampling, discarding any previous profile.
+     *
+     * @param allThreads whether to sample every thread instead of the main
+     *        thread only
+     * @param interval the sampling interval, in milliseconds
+     * @return <code>false</code> if the profiler is already running
+     */
+    public synchronized boolean start
+	(final boolean allThreads,
+	 final int interval)
+    {
+	if(sampler != null)
+	    return false;
+	frameIds.clear();
+	frames.clear();
+	stacks.clear();
+	samples = 0;
+	final long period = Math.max(MIN_INTERVAL, interval);
+	final Thread main = Looper.getMainLooper().getThread();
+	sampler = new Thread("fino-profiler") {
+		public void run() {
+		    while(!isInterrupted()) {
+			if(allThreads) {
+			    for(final Map.Entry<Thread, StackTraceElement[]> e:
+				    Thread.getAllStackTraces().entrySet()) {
+				if(e.getKey() != this)
+				    add(e.getKey().getName(), e.getValue());
+			    }
+			}
+			else {
+			    add(null, main.getStackTrace());
+			}
+			try {
+			    Thread.sleep(period);
+			} catch (InterruptedException e) {
+			    return;
+			}
+		    }
+		}
+	    };
+	sampler.setDaemon(true);
+	sampler.start();
+	return true;
+    }
+
+    /**
+     * Stop sampling, keeping the profile.
+     *
+     * @return the number of samples, or -1 if the profiler was not running
+     */
+    public int stop
+	()
+    {
+	final Thread t;
+	synchronized(this) {
+	    t = sampler;
+	    sampler = null;
+	}
+	if(t == null)
+	    return -1;
+	t.interrupt();
+	try {
+	    t.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	synchronized(this) {
+	    return samples;
+	}
+    }
+
+    /**
+     * Intern a frame name.
+     *
+     * @param name the frame name
+     * @return the frame identifier
+     */
+    private int intern
+	(final String name)
+    {
+	final Integer id = frameIds.get(name);
+	if(id != null)
+	    return id;
+	if(frames.size() >= MAX_FRAMES)
+	    return (name == UNKNOWN) ? -1 : intern(UNKNOWN);
+	frames.add(name);
+	frameIds.put(name, frames.size() - 1);
+	return frames.size() - 1;
+    }
+
+    /**
+     * Count a sample.
+     *
+     * @param thread the thread name, <code>null</code> to omit it
+     * @param trace the stack trace, leaf first
+     */
+    private synchronized void add
+	(final String thread,
+	 final StackTraceElement[] trace)
+    {
+	if(trace.length == 0)
+	    return;
+	final int depth = Math.min(trace.length, MAX_DEPTH);
+	final int offset = (thread == null) ? 0 : 1;
+	final int[] ids = new int[depth + offset];
+	/* Keep the folded format parseable */
+	if(thread != null)
+	    ids[0] = intern(thread.replace(' ', '_').replace(';', '_'));
+	/* Root first */
+	for(int i = 0; i < depth; i++) {
+	    final StackTraceElement f = trace[depth - 1 - i];
+	    ids[offset + i] = intern(f.getClassName() + "." + f.getMethodName());
+	}
+	Stack stack = new Stack(ids);
+	int[] count = stacks.get(stack);
+	if(count == null) {
+	    if(stacks.size() >= MAX_STACKS - 1)
+		stack = new Stack(new int[] { intern(TRUNCATED) });
+	    count = stacks.get(stack);
+	    if(count == null) {
+		count = new int[1];
+		stacks.put(stack, count);
+	    }
+	}
+	count[0]++;
+	samples++;
+    }
+
+    /**
+     * Describe the profile as folded stacks.
+     *
+     * @return one "<frame>;<frame>;... <count>" row per distinct stack
+     */
+    public synchronized String[] getFolded
+	()
+    {
+	final String[] result = new String[stacks.size()];
+	int i = 0;
+	final StringBuilder b = new StringBuilder();
+	for(final Map.Entry<Stack, int[]> e: stacks.entrySet()) {
+	    b.setLength(0);
+	    for(final int id: e.getKey().frames) {
+		if(b.length() > 0)
+		    b.append(';');
+		b.append((id < 0) ? UNKNOWN : frames.get(id));
+	    }
+	    b.append(' ').append(e.getValue()[0]);
+	    result[i++] = b.toString();
+	}
+	return result;
+    }
+}
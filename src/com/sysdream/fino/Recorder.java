@@ -0,0 +1,398 @@
+package com.sysdream.fino;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import android.util.Log;
+
+/**
+ * Binary log of binder transactions.
+ *
+ * Every recorded transaction keeps its raw request and reply parcels, so
+ * that a session may be replayed later, call for call, against another
+ * build of the service. One recorder is shared by every binding and
+ * session; transactions are appended in the order they complete.
+ *
+ * Transactions are handed to a writer thread through a bounded queue, so
+ * that binder threads only wait for the disk when the writer falls behind.
+ *
+ * The log starts with a header:
+ *
+ *   int magic, int version, long start time in milliseconds
+ *
+ * followed by one record per transaction:
+ *
+ *   int code, int flags, long start offset in nanoseconds, long duration in
+ *   nanoseconds, byte status, int request length, request bytes, int reply
+ *   length, reply bytes
+ *
+ * Numbers are big endian, parcels are stored as marshalled by the device.
+ * Parcels holding binder objects cannot be marshalled and are stored with a
+ * length of -1.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Recorder
+{
+    /**
+     * Log file magic, "FINO"
+     */
+    public static final int MAGIC = 0x46494e4f;
+
+    /**
+     * Log format version
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Transaction was handled
+     */
+    public static final byte HANDLED = 0;
+
+    /**
+     * Transaction code was unknown
+     */
+    public static final byte UNHANDLED = 1;
+
+    /**
+     * Transaction threw an exception
+     */
+    public static final byte FAILED = 2;
+
+    /**
+     * Maximum log size in bytes, recording stops beyond
+     */
+    static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Maximum number of transactions waiting to be written, recording
+     * threads block beyond
+     */
+    static final int QUEUE = 1024;
+
+    /**
+     * Recorded transaction, waiting to be written
+     */
+    static class Entry
+    {
+	final int code;
+	final int flags;
+	final long start;
+	final long duration;
+	final byte status;
+	final byte[] request;
+	final byte[] reply;
+
+	Entry
+	    (final int code,
+	     final int flags,
+	     final long start,
+	     final long duration,
+	     final byte status,
+	     final byte[] request,
+	     final byte[] reply)
+	{
+	    this.code = code;
+	    this.flags = flags;
+	    this.start = start;
+	    this.duration = duration;
+	    this.status = status;
+	    this.request = request;
+	    this.reply = reply;
+	}
+    }
+
+    /**
+     * Marker ending the queue of a writer
+     */
+    private static final Entry END
+	= new Entry(0, 0, 0, 0, HANDLED, null, null);
+
+    /**
+     * Writer thread, owning the log of a single recording.
+     */
+    private class Writer
+	extends Thread
+    {
+	/**
+	 * Transactions waiting to be written
+	 */
+	final BlockingQueue<Entry> queue
+	    = new ArrayBlockingQueue<Entry>(QUEUE);
+
+	/**
+	 * Log, <code>null</code> once closed
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Log file
+	 */
+	private final File file;
+
+	/**
+	 * Constructor
+	 *
+	 * @param out the log, header included
+	 * @param file the log file
+	 */
+	Writer
+	    (final DataOutputStream out,
+	     final File file)
+	{
+	    super("fino-recorder");
+	    this.out = out;
+	    this.file = file;
+	    setDaemon(true);
+	}
+
+	/**
+	 * Write transactions until the end marker.
+	 *
+	 * Write errors and size overflows stop recording but keep draining
+	 * the queue, so that recording threads never block on it.
+	 */
+	public void run
+	    ()
+	{
+	    try {
+		for(;;) {
+		    final Entry e = queue.take();
+		    if(e == END)
+			return;
+		    if(out == null)
+			continue;
+		    try {
+			write(e);
+		    } catch (IOException x) {
+			Log.e("fino", "cannot write " + file, x);
+			detach();
+			continue;
+		    }
+		    if(out.size() > MAX_SIZE) {
+			Log.w("fino",
+			      "recording stopped, " + file + " is full");
+			detach();
+		    }
+		}
+	    } catch (InterruptedException e) {
+		/* Stopped without flushing pending transactions */
+	    } finally {
+		close();
+	    }
+	}
+
+	/**
+	 * Append a transaction.
+	 *
+	 * @param e the transaction
+	 * @throws IOException on write errors
+	 */
+	private void write
+	    (final Entry e)
+	    throws IOException
+	{
+	    out.writeInt(e.code);
+	    out.writeInt(e.flags);
+	    out.writeLong(e.start);
+	    out.writeLong(e.duration);
+	    out.writeByte(e.status);
+	    write(e.request);
+	    write(e.reply);
+	}
+
+	/**
+	 * Write a length-prefixed byte array.
+	 *
+	 * @param data the array, may be <code>null</code>
+	 * @throws IOException on write errors
+	 */
+	private void write
+	    (final byte[] data)
+	    throws IOException
+	{
+	    if(data == null) {
+		out.writeInt(-1);
+		return;
+	    }
+	    out.writeInt(data.length);
+	    out.write(data);
+	}
+
+	/**
+	 * Stop accepting transactions and close the log.
+	 */
+	private void detach
+	    ()
+	{
+	    /* A new recording only starts once this writer is done */
+	    if(Recorder.this.queue == queue)
+		Recorder.this.queue = null;
+	    close();
+	}
+
+	/**
+	 * Close the log, ignoring errors.
+	 */
+	private void close
+	    ()
+	{
+	    if(out == null)
+		return;
+	    try {
+		out.close();
+	    } catch (IOException e) {
+		Log.e("fino", "cannot write " + file, e);
+	    }
+	    out = null;
+	}
+
+	/**
+	 * Write pending transactions, then stop.
+	 */
+	void finish
+	    ()
+	{
+	    try {
+		queue.put(END);
+	    } catch (InterruptedException e) {
+		interrupt();
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+
+    /**
+     * Queue of the current writer, <code>null</code> when not recording,
+     * checked without locking on every transaction
+     */
+    private volatile BlockingQueue<Entry> queue = null;
+
+    /**
+     * Current writer, <code>null</code> when stopped
+     */
+    private Writer writer = null;
+
+    /**
+     * Recording start time, in nanoseconds
+     */
+    private long origin;
+
+    /**
+     * Start recording, replacing any previous log of the same name.
+     *
+     * A recording in progress is stopped first.
+     *
+     * @param file the log file
+     * @return <code>true</code> if the log was created
+     */
+    public synchronized boolean start
+	(final File file)
+    {
+	stop();
+	DataOutputStream out = null;
+	try {
+	    out = new DataOutputStream(new BufferedOutputStream
+				       (new FileOutputStream(file), 65536));
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(System.currentTimeMillis());
+	} catch (IOException e) {
+	    Log.e("fino", "cannot create " + file, e);
+	    if(out != null) {
+		try {
+		    out.close();
+		} catch (IOException x) {
+		    /* Nothing left to save */
+		}
+	    }
+	    return false;
+	}
+	origin = System.nanoTime();
+	writer = new Writer(out, file);
+	writer.start();
+	queue = writer.queue;
+	return true;
+    }
+
+    /**
+     * Stop recording and flush the log.
+     *
+     * Transactions recorded so far are written before returning.
+     *
+     * @return <code>true</code> if a recording was in progress
+     */
+    public boolean stop
+	()
+    {
+	final Writer w;
+	synchronized(this) {
+	    w = writer;
+	    writer = null;
+	    queue = null;
+	}
+	if(w == null)
+	    return false;
+	w.finish();
+	try {
+	    w.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	return true;
+    }
+
+    /**
+     * Check whether transactions are being recorded.
+     *
+     * @return <code>true</code> while recording
+     */
+    public boolean isActive
+	()
+    {
+	return queue != null;
+    }
+
+    /**
+     * Append a transaction.
+     *
+     * The transaction is written later by the writer thread; write errors
+     * and size overflows stop the recording.
+     *
+     * @param code the transaction code
+     * @param flags the transaction flags
+     * @param start the transaction start time, from
+     *        <code>System.nanoTime()</code>
+     * @param duration the transaction duration, in nanoseconds
+     * @param status <code>HANDLED</code>, <code>UNHANDLED</code> or
+     *        <code>FAILED</code>
+     * @param request the marshalled request, may be <code>null</code>
+     * @param reply the marshalled reply, may be <code>null</code>
+     */
+    public void record
+	(final int code,
+	 final int flags,
+	 final long start,
+	 final long duration,
+	 final byte status,
+	 final byte[] request,
+	 final byte[] reply)
+    {
+	final BlockingQueue<Entry> q = queue;
+	if(q == null)
+	    return;
+	try {
+	    q.put(new Entry(code, flags, start - origin, duration, status,
+			    request, reply));
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
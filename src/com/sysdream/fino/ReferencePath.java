@@ -0,0 +1,220 @@
+package com.sysdream.fino;
+
+import java.util.ArrayDeque;
+
+/**
+ * Shortest reference chain from the entry points to an object.
+ *
+ * The object graph is walked breadth first from the entry points, and
+ * optionally from the classes of visited objects, until the target is
+ * found by identity or a budget is exhausted. Every visited object records
+ * its parent and the edge it was reached through, so the chain is rebuilt
+ * backwards from the target without keeping any path per node.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class ReferencePath
+    implements HeapWalker.Visitor
+{
+    /**
+     * Visited objects, with their parent and incoming edge
+     */
+    private final IdentityTable visited = new IdentityTable(4096, true);
+
+    /**
+     * Objects to visit
+     */
+    private final ArrayDeque<Object> queue = new ArrayDeque<Object>();
+
+    /**
+     * Searched object
+     */
+    private final Object target;
+
+    /**
+     * Whether the target was found
+     */
+    private boolean found = false;
+
+    /**
+     * Walk outcome
+     */
+    private String status = HeapHistogram.COMPLETE;
+
+    /**
+     * Search the graph.
+     *
+     * Entry points holding the target itself are not used as roots.
+     *
+     * @param entryPoints registered entry points by handle, may contain
+     *        <code>null</code> slots
+     * @param target the searched object
+     * @param statics whether to walk static fields of visited classes
+     * @param timeBudget the time budget in milliseconds, 0 for none
+     * @param nodeBudget the maximum number of visited objects, 0 for none
+     */
+    public ReferencePath
+	(final Object[] entryPoints,
+	 final Object target,
+	 final boolean statics,
+	 final long timeBudget,
+	 final int nodeBudget)
+    {
+	this.target = target;
+	for(int i = 0; i < entryPoints.length; i++)
+	    if(entryPoints[i] != null && entryPoints[i] != target)
+		addRoot(entryPoints[i], i);
+	final long deadline = (timeBudget > 0) ?
+	    System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+	int nodes = 0;
+	while(!found && !queue.isEmpty()) {
+	    if(nodeBudget > 0 && nodes >= nodeBudget) {
+		status = HeapHistogram.NODE_BUDGET;
+		break;
+	    }
+	    /* Checking time is not free, only do it once in a while */
+	    if((nodes & 0x3FF) == 0 && System.nanoTime() > deadline) {
+		status = HeapHistogram.TIME_BUDGET;
+		break;
+	    }
+	    final Object o = queue.poll();
+	    nodes++;
+	    if(statics && !(o instanceof Class<?>)
+	       && o.getClass() != target)
+		addRoot(o.getClass(), -1);
+	    HeapWalker.references(o, statics, this);
+	}
+	queue.clear();
+    }
+
+    /**
+     * Register a root and queue it.
+     *
+     * Roots have no parent and their value is the entry point handle, or -1
+     * for classes.
+     *
+     * @param o the root object
+     * @param handle the entry point handle, -1 for classes
+     */
+    private void addRoot
+	(final Object o,
+	 final int handle)
+    {
+	final int slot = visited.insert(o);
+	if(slot < 0)
+	    return;
+	visited.setValue(slot, handle);
+	queue.add(o);
+    }
+
+    /**
+     * Encode an edge as a slot value.
+     *
+     * @param kind <code>FIELD</code> or <code>ITEM</code>
+     * @param index the field list index or the item index
+     * @return the field index, or <code>-(index + 1)</code> for items
+     */
+    private static int encode
+	(final int kind,
+	 final int index)
+    {
+	return (kind == HeapWalker.ITEM) ? -(index + 1) : index;
+    }
+
+    /**
+     * @see HeapWalker.Visitor.edge
+     */
+    public boolean edge
+	(final Object from,
+	 final Object to,
+	 final int kind,
+	 final int index)
+    {
+	if(HeapWalker.isInternal(to))
+	    return true;
+	final int slot = visited.insert(to);
+	if(slot < 0)
+	    return true;
+	visited.setLink(slot, from);
+	visited.setValue(slot, encode(kind, index));
+	if(to == target) {
+	    found = true;
+	    return false;
+	}
+	queue.add(to);
+	return true;
+    }
+
+    /**
+     * Check whether the target was found.
+     *
+     * @return <code>true</code> if a chain exists
+     */
+    public boolean isFound
+	()
+    {
+	return found;
+    }
+
+    /**
+     * Describe the walk outcome.
+     *
+     * @return "complete", "nodes" or "time"
+     */
+    public String getStatus
+	()
+    {
+	return status;
+    }
+
+    /**
+     * Turn the chain into an entry point and a path.
+     *
+     * Paths only cross fields, so when the chain goes through an array item
+     * or starts from a class that is not registered, the object at that
+     * step is pushed as a new entry point and the path restarts from there.
+     *
+     * @param entryPoints the entry point register
+     * @return the entry point followed by the path, or <code>null</code> if
+     *         the target was not found
+     */
+    public int[] toPath
+	(final EntryPoints entryPoints)
+    {
+	if(!found)
+	    return null;
+	/* Walk back to the root */
+	int length = 0;
+	Object o = target;
+	int slot = visited.slot(o);
+	while(visited.getLink(slot) != null) {
+	    length++;
+	    o = visited.getLink(slot);
+	    slot = visited.slot(o);
+	}
+	final Object[] nodes = new Object[length + 1];
+	final int[] edges = new int[length + 1];
+	o = target;
+	for(int i = length; i >= 0; i--) {
+	    slot = visited.slot(o);
+	    nodes[i] = o;
+	    edges[i] = visited.getValue(slot);
+	    o = visited.getLink(slot);
+	}
+	/* Rebuild the path from the last registered object */
+	int handle = (edges[0] >= 0) ? edges[0] : entryPoints.add(nodes[0]);
+	int start = 1;
+	for(int i = 1; i <= length; i++) {
+	    if(edges[i] < 0) {
+		handle = entryPoints.add(nodes[i]);
+		start = i + 1;
+	    }
+	}
+	final int[] result = new int[length - start + 2];
+	result[0] = handle;
+	for(int i = start; i <= length; i++)
+	    result[i - start + 1] = edges[i];
+	return result;
+    }
+}
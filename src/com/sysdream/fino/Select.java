@@ -0,0 +1,223 @@
+package com.sysdream.fino;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Evaluation of one path expression against many objects.
+ *
+ * Results are column oriented: for every row, the referenced object, its
+ * rendering as "<value>:<type>" and a status. Large sets are split in
+ * chunks evaluated in parallel on a small shared pool, small ones are
+ * evaluated on the calling thread.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Select
+{
+    /**
+     * Row was evaluated
+     */
+    public static final int OK = 0;
+
+    /**
+     * Expression could not be resolved, the value is the error
+     */
+    public static final int UNRESOLVED = -1;
+
+    /**
+     * Value could not be rendered, the value is the error
+     */
+    public static final int UNRENDERED = -2;
+
+    /**
+     * Result key of the evaluated entry points
+     */
+    public static final String HANDLES = "handles";
+
+    /**
+     * Result key of the rendered values
+     */
+    public static final String VALUES = "values";
+
+    /**
+     * Result key of the row statuses
+     */
+    public static final String STATUS = "status";
+
+    /**
+     * Result key of the pushed entry points
+     */
+    public static final String PUSHED = "pushed";
+
+    /**
+     * Minimum number of rows evaluated in parallel
+     */
+    static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Evaluation pool, created on first use
+     */
+    private static ExecutorService pool = null;
+
+    /**
+     * Evaluated expression
+     */
+    private final PathExpression expression;
+
+    /**
+     * Evaluated objects
+     */
+    private final Object[] targets;
+
+    /**
+     * Referenced objects, by row
+     */
+    private final Object[] results;
+
+    /**
+     * Rendered values, by row
+     */
+    private final String[] values;
+
+    /**
+     * Statuses, by row
+     */
+    private final int[] status;
+
+    /**
+     * Evaluate an expression.
+     *
+     * @param expression the expression
+     * @param targets the objects to evaluate it against
+     * @throws InterruptedException if interrupted while waiting for chunks
+     */
+    public Select
+	(final PathExpression expression,
+	 final Object[] targets)
+	throws InterruptedException
+    {
+	this.expression = expression;
+	this.targets = targets;
+	results = new Object[targets.length];
+	values = new String[targets.length];
+	status = new int[targets.length];
+	if(targets.length < PARALLEL_THRESHOLD) {
+	    evaluate(0, targets.length);
+	    return;
+	}
+	final int chunks = Runtime.getRuntime().availableProcessors();
+	final int size = (targets.length + chunks - 1) / chunks;
+	final List<Future<?>> pending = new ArrayList<Future<?>>();
+	for(int start = 0; start < targets.length; start += size) {
+	    final int from = start;
+	    final int to = Math.min(targets.length, start + size);
+	    pending.add(pool().submit(new Runnable() {
+		    public void run() {
+			evaluate(from, to);
+		    }
+		}));
+	}
+	for(final Future<?> f: pending) {
+	    try {
+		f.get();
+	    } catch (ExecutionException e) {
+		/* Rows are evaluated without throwing */
+	    }
+	}
+    }
+
+    /**
+     * Get the evaluation pool.
+     *
+     * @return the pool
+     */
+    private static synchronized ExecutorService pool
+	()
+    {
+	if(pool == null) {
+	    pool = Executors.newFixedThreadPool
+		(Runtime.getRuntime().availableProcessors(),
+		 new ThreadFactory() {
+		     public Thread newThread(final Runnable r) {
+			 final Thread t = new Thread(r, "fino-select");
+			 t.setDaemon(true);
+			 return t;
+		     }
+		 });
+	}
+	return pool;
+    }
+
+    /**
+     * Evaluate a range of rows.
+     *
+     * @param from the first row
+     * @param to the row after the last one
+     */
+    private void evaluate
+	(final int from,
+	 final int to)
+    {
+	for(int i = from; i < to; i++) {
+	    final Object o;
+	    try {
+		o = expression.resolve(targets[i]);
+	    } catch (RuntimeException e) {
+		status[i] = UNRESOLVED;
+		values[i] = String.valueOf(e.getMessage());
+		continue;
+	    }
+	    results[i] = o;
+	    try {
+		values[i] = (o == null) ? "null" : o.toString()
+		    + InspectionStub.SEPARATOR
+		    + o.getClass().getName();
+		status[i] = OK;
+	    } catch (RuntimeException e) {
+		status[i] = UNRENDERED;
+		values[i] = e.toString();
+	    }
+	}
+    }
+
+    /**
+     * Get the referenced objects.
+     *
+     * @return the objects by row, <code>null</code> for failed rows
+     */
+    public Object[] getResults
+	()
+    {
+	return results;
+    }
+
+    /**
+     * Get the rendered values.
+     *
+     * @return the values by row, or the error for failed rows
+     */
+    public String[] getValues
+	()
+    {
+	return values;
+    }
+
+    /**
+     * Get the row statuses.
+     *
+     * @return <code>OK</code>, <code>UNRESOLVED</code> or
+     *         <code>UNRENDERED</code> by row
+     */
+    public int[] getStatus
+	()
+    {
+	return status;
+    }
+}
@@ -0,0 +1,133 @@
+package com.sysdream.fino;
+
+import java.util.ArrayList;
+
+/**
+ * Set of entry point registers sharing the same roots.
+ *
+ * Roots are the entry points discovered by the service itself, that is the
+ * application and the resumed activities. Every client session gets its own
+ * register, so that handles of one client neither collide with nor leak into
+ * another, while roots are registered into every register as they come and
+ * go. Closing a session releases all its handles at once.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Sessions
+{
+    /**
+     * Current roots, in discovery order
+     */
+    private final ArrayList<Object> roots = new ArrayList<Object>();
+
+    /**
+     * Live registers, including the shared one
+     */
+    private final ArrayList<EntryPoints> registers
+	= new ArrayList<EntryPoints>();
+
+    /**
+     * Constructor
+     *
+     * @param shared the register shared by clients that do not open a
+     *        session
+     */
+    public Sessions
+	(final EntryPoints shared)
+    {
+	registers.add(shared);
+    }
+
+    /**
+     * Check whether an object already is a root, by identity.
+     *
+     * @param o the object
+     * @return the index in the root list or -1
+     */
+    private int rootIndex
+	(final Object o)
+    {
+	for(int i = 0; i < roots.size(); i++)
+	    if(roots.get(i) == o)
+		return i;
+	return -1;
+    }
+
+    /**
+     * Register a root into every live register.
+     *
+     * @param o the root object
+     */
+    public synchronized void addRoot
+	(final Object o)
+    {
+	if(o == null || rootIndex(o) >= 0)
+	    return;
+	roots.add(o);
+	for(final EntryPoints e: registers)
+	    e.add(o);
+    }
+
+    /**
+     * Release a root from every live register.
+     *
+     * @param o the root object
+     */
+    public synchronized void removeRoot
+	(final Object o)
+    {
+	final int i = rootIndex(o);
+	if(i < 0)
+	    return;
+	roots.remove(i);
+	for(final EntryPoints e: registers)
+	    e.remove(o);
+    }
+
+    /**
+     * Open a session with its own register, seeded with current roots.
+     *
+     * @return the session register
+     */
+    public synchronized EntryPoints open
+	()
+    {
+	final EntryPoints e = new EntryPoints();
+	for(final Object o: roots)
+	    e.add(o);
+	registers.add(e);
+	return e;
+    }
+
+    /**
+     * Close a session and release all its handles.
+     *
+     * The register stops following roots and refuses any further use. The
+     * shared register cannot be closed.
+     *
+     * @param e the session register
+     * @return <code>true</code> if the session was open
+     */
+    public synchronized boolean close
+	(final EntryPoints e)
+    {
+	/* The shared register always comes first */
+	if(registers.indexOf(e) <= 0)
+	    return false;
+	registers.remove(e);
+	e.close();
+	return true;
+    }
+
+    /**
+     * Count open sessions, excluding the shared register.
+     *
+     * @return the number of open sessions
+     */
+    public synchronized int count
+	()
+    {
+	return registers.size() - 1;
+    }
+}
@@ -0,0 +1,240 @@
+package com.sysdream.fino;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import android.content.res.Resources;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * Snapshot of a whole <code>View</code> hierarchy.
+ *
+ * The hierarchy is walked once, on the UI thread, and every node is
+ * described by a single <code>String</code> in the following format:
+ *
+ *   "<handle>:<parent handle>:<class>:<id>:<left>,<top>,<right>,<bottom>:<visibility>:<text>"
+ *
+ * The handle is the node index in the entry point register, the parent
+ * handle is -1 for the root node. Bounds are absolute screen coordinates,
+ * visibility is the raw <code>View.getVisibility()</code> value and the text
+ * is only filled for <code>TextView</code> nodes. Since the text is the last
+ * item, it may safely contain separators.
+ *
+ * Nodes are matched by identity between two snapshots of the same root, so
+ * that only added, removed or changed nodes need to be sent on refresh.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class ViewCapture
+{
+    /**
+     * Capture identifier
+     */
+    private final int id;
+
+    /**
+     * Root of the captured hierarchy
+     */
+    private final View root;
+
+    /**
+     * Captured nodes, in depth-first order
+     */
+    private final ArrayList<View> nodes = new ArrayList<View>();
+
+    /**
+     * Node descriptions
+     */
+    private final IdentityHashMap<View, String> rows
+	= new IdentityHashMap<View, String>();
+
+    /**
+     * Handles allocated by this capture or inherited from a previous capture
+     * of the same root, as opposed to views the client pushed or reached
+     * itself
+     */
+    private final IdentityHashMap<View, Integer> owned
+	= new IdentityHashMap<View, Integer>();
+
+    /**
+     * Capture a hierarchy.
+     *
+     * Must be called from the UI thread.
+     *
+     * @param id the capture identifier
+     * @param root the root view
+     * @param entryPoints the register where nodes are pushed
+     */
+    public ViewCapture
+	(final int id,
+	 final View root,
+	 final EntryPoints entryPoints)
+    {
+	this.id = id;
+	this.root = root;
+	final int[] location = new int[2];
+	final ArrayDeque<View> stack = new ArrayDeque<View>();
+	final ArrayDeque<Integer> parents = new ArrayDeque<Integer>();
+	stack.push(root);
+	parents.push(-1);
+	while(!stack.isEmpty()) {
+	    final View v = stack.pop();
+	    final int parent = parents.pop();
+	    final boolean known = entryPoints.contains(v);
+	    final int handle = entryPoints.add(v);
+	    if(!known)
+		owned.put(v, handle);
+	    v.getLocationOnScreen(location);
+	    final StringBuilder row = new StringBuilder();
+	    row.append(handle)
+		.append(InspectionStub.SEPARATOR).append(parent)
+		.append(InspectionStub.SEPARATOR).append(v.getClass().getName())
+		.append(InspectionStub.SEPARATOR).append(idName(v))
+		.append(InspectionStub.SEPARATOR)
+		.append(location[0]).append(',')
+		.append(location[1]).append(',')
+		.append(location[0] + v.getRight() - v.getLeft()).append(',')
+		.append(location[1] + v.getBottom() - v.getTop())
+		.append(InspectionStub.SEPARATOR).append(v.getVisibility())
+		.append(InspectionStub.SEPARATOR);
+	    if(v instanceof TextView) {
+		final CharSequence text = ((TextView)v).getText();
+		if(text != null)
+		    row.append(text);
+	    }
+	    nodes.add(v);
+	    rows.put(v, row.toString());
+	    /* Push children in reverse order to keep the natural order */
+	    if(v instanceof ViewGroup) {
+		final ViewGroup g = (ViewGroup)v;
+		for(int i = g.getChildCount() - 1; i >= 0; i--) {
+		    final View child = g.getChildAt(i);
+		    if(child != null) {
+			stack.push(child);
+			parents.push(handle);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Describe a view identifier, by resource entry name if possible.
+     *
+     * @param v the view
+     * @return the identifier description
+     */
+    private static String idName
+	(final View v)
+    {
+	final int id = v.getId();
+	if(id == View.NO_ID)
+	    return "-1";
+	try {
+	    final Resources r = v.getResources();
+	    if(r != null)
+		return r.getResourceEntryName(id);
+	} catch (Resources.NotFoundException e) {
+	}
+	return "0x" + Integer.toHexString(id);
+    }
+
+    /**
+     * Get the capture identifier.
+     *
+     * @return the identifier
+     */
+    public int getId
+	()
+    {
+	return id;
+    }
+
+    /**
+     * Get the root of the captured hierarchy.
+     *
+     * @return the root view
+     */
+    public View getRoot
+	()
+    {
+	return root;
+    }
+
+    /**
+     * List every captured node.
+     *
+     * @return the capture identifier followed by node descriptions
+     */
+    public String[] getRows
+	()
+    {
+	final String[] result = new String[nodes.size() + 1];
+	result[0] = Integer.toString(id);
+	for(int i = 0; i < nodes.size(); i++)
+	    result[i + 1] = rows.get(nodes.get(i));
+	return result;
+    }
+
+    /**
+     * List differences from a previous capture of the same root.
+     *
+     * Added nodes are prefixed with "+", changed nodes with "~" and removed
+     * nodes are listed as "-<handle>".
+     *
+     * @param previous the previous capture
+     * @return this capture identifier followed by the differences
+     */
+    public String[] diff
+	(final ViewCapture previous)
+    {
+	final ArrayList<String> result = new ArrayList<String>();
+	result.add(Integer.toString(id));
+	for(final View v: nodes) {
+	    final String before = previous.rows.get(v);
+	    final String after = rows.get(v);
+	    if(before == null)
+		result.add("+" + after);
+	    else if(!before.equals(after))
+		result.add("~" + after);
+	}
+	for(final View v: previous.nodes) {
+	    if(!rows.containsKey(v)) {
+		final String before = previous.rows.get(v);
+		result.add("-" + before.substring
+			   (0, before.indexOf(InspectionStub.SEPARATOR)));
+	    }
+	}
+	return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Release nodes of a previous capture of the same root that are no
+     * longer part of the hierarchy, so that detached views and their context
+     * may be garbage collected.
+     *
+     * Only handles allocated by captures are released; views the client
+     * registered itself keep their handle. Handles of nodes still in the
+     * hierarchy are inherited by this capture.
+     *
+     * @param previous the previous capture
+     * @param entryPoints the register where nodes were pushed
+     */
+    public void releaseRemoved
+	(final ViewCapture previous,
+	 final EntryPoints entryPoints)
+    {
+	for(final Map.Entry<View, Integer> e: previous.owned.entrySet()) {
+	    /* Handles are never reused, releasing a stale one is harmless */
+	    if(rows.containsKey(e.getKey()))
+		owned.put(e.getKey(), e.getValue());
+	    else
+		entryPoints.release(e.getValue());
+	}
+    }
+}
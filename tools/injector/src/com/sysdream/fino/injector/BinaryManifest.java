@@ -0,0 +1,702 @@
+package com.sysdream.fino.injector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Minimal editor for compiled <code>AndroidManifest.xml</code> files.
+ *
+ * The binary XML format is made of a string pool, a resource map giving the
+ * resource identifier of the first strings (those used as attribute names)
+ * and a flat list of XML node chunks referencing strings by index. Nodes are
+ * kept as raw chunks and only string indices are rewritten, so that the
+ * manifest is edited in place instead of being decoded and rebuilt.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class BinaryManifest
+{
+    /**
+     * Chunk types
+     */
+    static final int RES_XML_TYPE = 0x0003;
+    static final int RES_STRING_POOL_TYPE = 0x0001;
+    static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    static final int RES_XML_START_NAMESPACE_TYPE = 0x0100;
+    static final int RES_XML_END_NAMESPACE_TYPE = 0x0101;
+    static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    static final int RES_XML_END_ELEMENT_TYPE = 0x0103;
+    static final int RES_XML_CDATA_TYPE = 0x0104;
+
+    /**
+     * Typed value types
+     */
+    static final int TYPE_STRING = 0x03;
+    static final int TYPE_INT_DEC = 0x10;
+    static final int TYPE_INT_BOOLEAN = 0x12;
+
+    /**
+     * String pool flags
+     */
+    static final int SORTED_FLAG = 0x001;
+    static final int UTF8_FLAG = 0x100;
+
+    /**
+     * Framework attribute identifiers
+     */
+    static final int ATTR_NAME = 0x01010003;
+    static final int ATTR_ENABLED = 0x0101000e;
+    static final int ATTR_EXPORTED = 0x01010010;
+    static final int ATTR_MIN_SDK_VERSION = 0x0101020c;
+    static final int ATTR_TARGET_SDK_VERSION = 0x01010270;
+
+    /**
+     * Android namespace
+     */
+    static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    /**
+     * No string reference
+     */
+    static final int NONE = 0xFFFFFFFF;
+
+    /**
+     * UTF-8 charset
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Pool strings
+     */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Resource identifiers of the first strings
+     */
+    private final List<Integer> resourceIds = new ArrayList<Integer>();
+
+    /**
+     * Raw XML node chunks
+     */
+    private final List<byte[]> nodes = new ArrayList<byte[]>();
+
+    /**
+     * String pool flags
+     */
+    private int flags;
+
+    /**
+     * Parse a compiled manifest.
+     *
+     * @param data the manifest contents
+     * @throws IOException if the manifest is misformed or uses unsupported
+     *         features
+     */
+    public BinaryManifest
+	(final byte[] data)
+	throws IOException
+    {
+	final ByteBuffer b = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	if((b.getShort(0) & 0xFFFF) != RES_XML_TYPE)
+	    throw new IOException("not a binary XML file");
+	int offset = b.getShort(2) & 0xFFFF;
+	while(offset < data.length) {
+	    final int type = b.getShort(offset) & 0xFFFF;
+	    final int size = b.getInt(offset + 4);
+	    if(size < 8 || offset + size > data.length)
+		throw new IOException("misformed chunk at " + offset);
+	    if(type == RES_STRING_POOL_TYPE)
+		parseStrings(b, offset);
+	    else if(type == RES_XML_RESOURCE_MAP_TYPE)
+		for(int i = 8; i < size; i += 4)
+		    resourceIds.add(b.getInt(offset + i));
+	    else if(type >= RES_XML_START_NAMESPACE_TYPE
+		    && type <= RES_XML_CDATA_TYPE) {
+		final byte[] node = new byte[size];
+		System.arraycopy(data, offset, node, 0, size);
+		nodes.add(node);
+	    }
+	    offset += size;
+	}
+    }
+
+    /**
+     * Decode the string pool.
+     *
+     * @param b the file buffer
+     * @param offset the pool chunk offset
+     * @throws IOException if the pool contains styles
+     */
+    private void parseStrings
+	(final ByteBuffer b,
+	 final int offset)
+	throws IOException
+    {
+	final int count = b.getInt(offset + 8);
+	final int styles = b.getInt(offset + 12);
+	flags = b.getInt(offset + 16);
+	final int start = offset + b.getInt(offset + 20);
+	if(styles != 0)
+	    throw new IOException("styled manifest strings are not supported");
+	for(int i = 0; i < count; i++) {
+	    int p = start + b.getInt(offset + 28 + 4 * i);
+	    if((flags & UTF8_FLAG) != 0) {
+		/* Skip the UTF-16 length, then read the UTF-8 length */
+		p += ((b.get(p) & 0x80) != 0) ? 2 : 1;
+		int length = b.get(p) & 0xFF;
+		if((length & 0x80) != 0) {
+		    length = ((length & 0x7F) << 8) | (b.get(p + 1) & 0xFF);
+		    p += 2;
+		}
+		else {
+		    p += 1;
+		}
+		final byte[] bytes = new byte[length];
+		for(int j = 0; j < length; j++)
+		    bytes[j] = b.get(p + j);
+		strings.add(new String(bytes, UTF8));
+	    }
+	    else {
+		int length = b.getShort(p) & 0xFFFF;
+		if((length & 0x8000) != 0) {
+		    length = ((length & 0x7FFF) << 16)
+			| (b.getShort(p + 2) & 0xFFFF);
+		    p += 4;
+		}
+		else {
+		    p += 2;
+		}
+		final char[] chars = new char[length];
+		for(int j = 0; j < length; j++)
+		    chars[j] = b.getChar(p + 2 * j);
+		strings.add(new String(chars));
+	    }
+	}
+    }
+
+    /**
+     * Get the index of a string, appending it to the pool if needed.
+     *
+     * @param s the string
+     * @return the string index
+     */
+    private int string
+	(final String s)
+    {
+	/* Strings mapped to resources are attribute names, skip them */
+	for(int i = resourceIds.size(); i < strings.size(); i++)
+	    if(strings.get(i).equals(s))
+		return i;
+	strings.add(s);
+	return strings.size() - 1;
+    }
+
+    /**
+     * Get the index of an attribute name string mapped to a resource
+     * identifier, inserting it in the mapped area of the pool if needed.
+     *
+     * @param name the attribute name
+     * @param id the attribute resource identifier
+     * @return the string index
+     */
+    private int attribute
+	(final String name,
+	 final int id)
+    {
+	final int existing = resourceIds.indexOf(id);
+	if(existing >= 0)
+	    return existing;
+	/* Insert right after the mapped strings and shift every reference */
+	final int index = resourceIds.size();
+	strings.add(index, name);
+	resourceIds.add(id);
+	for(final byte[] node: nodes)
+	    shiftStrings(node, index);
+	return index;
+    }
+
+    /**
+     * Shift string references of a node after a string insertion.
+     *
+     * @param node the raw node chunk
+     * @param from the inserted string index
+     */
+    private static void shiftStrings
+	(final byte[] node,
+	 final int from)
+    {
+	final ByteBuffer b = ByteBuffer.wrap(node).order(ByteOrder.LITTLE_ENDIAN);
+	final int type = b.getShort(0) & 0xFFFF;
+	shift(b, 12, from);
+	switch(type) {
+	case RES_XML_START_NAMESPACE_TYPE:
+	case RES_XML_END_NAMESPACE_TYPE:
+	case RES_XML_END_ELEMENT_TYPE:
+	    shift(b, 16, from);
+	    shift(b, 20, from);
+	    break;
+	case RES_XML_START_ELEMENT_TYPE:
+	    shift(b, 16, from);
+	    shift(b, 20, from);
+	    final int start = 16 + (b.getShort(24) & 0xFFFF);
+	    final int size = b.getShort(26) & 0xFFFF;
+	    final int count = b.getShort(28) & 0xFFFF;
+	    for(int i = 0; i < count; i++) {
+		final int a = start + i * size;
+		shift(b, a, from);
+		shift(b, a + 4, from);
+		shift(b, a + 8, from);
+		if((b.get(a + 15) & 0xFF) == TYPE_STRING)
+		    shift(b, a + 16, from);
+	    }
+	    break;
+	case RES_XML_CDATA_TYPE:
+	    shift(b, 16, from);
+	    if((b.get(23) & 0xFF) == TYPE_STRING)
+		shift(b, 24, from);
+	    break;
+	default:
+	    break;
+	}
+    }
+
+    /**
+     * Shift a single string reference.
+     *
+     * @param b the node buffer
+     * @param offset the reference offset
+     * @param from the inserted string index
+     */
+    private static void shift
+	(final ByteBuffer b,
+	 final int offset,
+	 final int from)
+    {
+	final int index = b.getInt(offset);
+	if(index != NONE && index >= from)
+	    b.putInt(offset, index + 1);
+    }
+
+    /**
+     * Get the type of a node.
+     *
+     * @param node the raw node chunk
+     * @return the chunk type
+     */
+    private static int type
+	(final byte[] node)
+    {
+	return (node[0] & 0xFF) | ((node[1] & 0xFF) << 8);
+    }
+
+    /**
+     * Get the element name of a start or end element node.
+     *
+     * @param node the raw node chunk
+     * @return the element name
+     */
+    private String elementName
+	(final byte[] node)
+    {
+	final int index = ByteBuffer.wrap(node)
+	    .order(ByteOrder.LITTLE_ENDIAN).getInt(20);
+	return (index == NONE) ? null : strings.get(index);
+    }
+
+    /**
+     * Find a start or end element node.
+     *
+     * @param type the node type
+     * @param name the element name
+     * @return the node index or -1
+     */
+    private int find
+	(final int type,
+	 final String name)
+    {
+	for(int i = 0; i < nodes.size(); i++)
+	    if(type(nodes.get(i)) == type
+	       && name.equals(elementName(nodes.get(i))))
+		return i;
+	return -1;
+    }
+
+    /**
+     * Check if a string is present in the pool.
+     *
+     * @param s the string
+     * @return <code>true</code> if present
+     */
+    public boolean contains
+	(final String s)
+    {
+	return strings.contains(s);
+    }
+
+    /**
+     * Declare an exported service with a single intent filter action.
+     *
+     * The service element is inserted right before the end of the
+     * application element.
+     *
+     * @param service the service class name
+     * @param action the intent filter action
+     * @throws IOException if there is no application element
+     */
+    public void addService
+	(final String service,
+	 final String action)
+	throws IOException
+    {
+	final int end = find(RES_XML_END_ELEMENT_TYPE, "application");
+	if(end < 0)
+	    throw new IOException("no application element");
+	/* Attribute names first, since they may shift other strings */
+	final int name = attribute("name", ATTR_NAME);
+	final int enabled = attribute("enabled", ATTR_ENABLED);
+	final int exported = attribute("exported", ATTR_EXPORTED);
+	final int ns = string(ANDROID_NS);
+	final int serviceTag = string("service");
+	final int filterTag = string("intent-filter");
+	final int actionTag = string("action");
+	final int serviceName = string(service);
+	final int actionName = string(action);
+	final int line = ByteBuffer.wrap(nodes.get(end))
+	    .order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+	/* Attributes must be sorted by resource identifier */
+	final List<byte[]> added = new ArrayList<byte[]>();
+	added.add(startElement(line, serviceTag, new int[][] {
+		    {ns, name, serviceName, TYPE_STRING, serviceName},
+		    {ns, enabled, NONE, TYPE_INT_BOOLEAN, 0xFFFFFFFF},
+		    {ns, exported, NONE, TYPE_INT_BOOLEAN, 0xFFFFFFFF}}));
+	added.add(startElement(line, filterTag, new int[0][]));
+	added.add(startElement(line, actionTag, new int[][] {
+		    {ns, name, actionName, TYPE_STRING, actionName}}));
+	added.add(endElement(line, actionTag));
+	added.add(endElement(line, filterTag));
+	added.add(endElement(line, serviceTag));
+	nodes.addAll(end, added);
+    }
+
+    /**
+     * Decode the attributes of a start element node.
+     *
+     * @param node the raw node chunk
+     * @return namespace, name, raw value, type and data of every attribute
+     */
+    private static List<int[]> attributes
+	(final byte[] node)
+    {
+	final ByteBuffer b = ByteBuffer.wrap(node).order(ByteOrder.LITTLE_ENDIAN);
+	final int start = 16 + (b.getShort(24) & 0xFFFF);
+	final int size = b.getShort(26) & 0xFFFF;
+	final int count = b.getShort(28) & 0xFFFF;
+	final List<int[]> result = new ArrayList<int[]>();
+	for(int i = 0; i < count; i++) {
+	    final int a = start + i * size;
+	    result.add(new int[] {
+		    b.getInt(a), b.getInt(a + 4), b.getInt(a + 8),
+		    b.get(a + 15) & 0xFF, b.getInt(a + 16)});
+	}
+	return result;
+    }
+
+    /**
+     * Find a decoded attribute by resource identifier.
+     *
+     * @param attributes the decoded attributes
+     * @param id the attribute resource identifier
+     * @return the attribute or <code>null</code>
+     */
+    private int[] attribute
+	(final List<int[]> attributes,
+	 final int id)
+    {
+	final int name = resourceIds.indexOf(id);
+	if(name < 0)
+	    return null;
+	for(final int[] a: attributes)
+	    if(a[1] == name)
+		return a;
+	return null;
+    }
+
+    /**
+     * Set a decimal attribute, adding it if missing.
+     *
+     * @param attributes the decoded attributes
+     * @param ns the namespace index
+     * @param name the attribute name index
+     * @param value the attribute value
+     */
+    private static void setInt
+	(final List<int[]> attributes,
+	 final int ns,
+	 final int name,
+	 final int value)
+    {
+	final int[] a = new int[] {ns, name, NONE, TYPE_INT_DEC, value};
+	for(int i = 0; i < attributes.size(); i++) {
+	    if(attributes.get(i)[1] == name) {
+		attributes.set(i, a);
+		return;
+	    }
+	}
+	attributes.add(a);
+    }
+
+    /**
+     * Decode an SDK version attribute.
+     *
+     * Versions are compiled as decimal integers, but may be kept as strings,
+     * either numbers or the codename of a preview platform.
+     *
+     * @param a the decoded attribute
+     * @return the version, <code>Integer.MAX_VALUE</code> for codenames and
+     *         unsupported types
+     */
+    private int sdkVersion
+	(final int[] a)
+    {
+	if(a[3] == TYPE_INT_DEC)
+	    return a[4];
+	if(a[3] == TYPE_STRING && a[4] != NONE) {
+	    try {
+		return Integer.parseInt(strings.get(a[4]).trim());
+	    } catch (final NumberFormatException e) {
+		/* Previews are above every released version */
+	    }
+	}
+	return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Raise the minimum SDK version if it is declared lower.
+     *
+     * A missing <code>uses-sdk</code> element or minimum version counts as
+     * version 1, and string versions are rewritten as decimal integers.
+     * Since a missing target version defaults to the minimum one, the target
+     * is then pinned to the previous minimum, so that the application keeps
+     * its compatibility behaviors. A declared target is left untouched, even
+     * if lower than the new minimum.
+     *
+     * @param version the required minimum version
+     * @return <code>true</code> if the version was raised
+     */
+    public boolean requireMinSdkVersion
+	(final int version)
+    {
+	final int manifest = find(RES_XML_START_ELEMENT_TYPE, "manifest");
+	if(manifest < 0)
+	    return false;
+	final int index = find(RES_XML_START_ELEMENT_TYPE, "uses-sdk");
+	List<int[]> attributes = (index < 0)
+	    ? new ArrayList<int[]>() : attributes(nodes.get(index));
+	final int[] min = attribute(attributes, ATTR_MIN_SDK_VERSION);
+	final int declared = (min == null) ? 1 : sdkVersion(min);
+	if(declared >= version)
+	    return false;
+	final boolean pin
+	    = attribute(attributes, ATTR_TARGET_SDK_VERSION) == null;
+	/* Attribute names first, since they may shift other strings */
+	final int minName = attribute("minSdkVersion", ATTR_MIN_SDK_VERSION);
+	final int targetName
+	    = attribute("targetSdkVersion", ATTR_TARGET_SDK_VERSION);
+	final int ns = string(ANDROID_NS);
+	final int tag = string("uses-sdk");
+	if(index >= 0)
+	    attributes = attributes(nodes.get(index));
+	setInt(attributes, ns, minName, version);
+	if(pin)
+	    setInt(attributes, ns, targetName, declared);
+	/* Attributes must be sorted by resource identifier */
+	Collections.sort(attributes, new Comparator<int[]>() {
+		public int compare(final int[] a, final int[] b) {
+		    return Long.compare(resourceId(a[1]), resourceId(b[1]));
+		}
+	    });
+	final int[][] added = attributes.toArray(new int[attributes.size()][]);
+	if(index < 0) {
+	    /* First child of the manifest element */
+	    final int line = ByteBuffer.wrap(nodes.get(manifest))
+		.order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+	    nodes.add(manifest + 1, startElement(line, tag, added));
+	    nodes.add(manifest + 2, endElement(line, tag));
+	}
+	else {
+	    final int line = ByteBuffer.wrap(nodes.get(index))
+		.order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+	    nodes.set(index, startElement(line, tag, added));
+	}
+	return true;
+    }
+
+    /**
+     * Get the resource identifier of an attribute name, for sorting.
+     *
+     * @param name the attribute name index
+     * @return the unsigned identifier, unmapped names coming last
+     */
+    private long resourceId
+	(final int name)
+    {
+	if(name < 0 || name >= resourceIds.size())
+	    return Long.MAX_VALUE;
+	return resourceIds.get(name) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Build a start element node.
+     *
+     * @param line the source line number
+     * @param name the element name index
+     * @param attributes namespace, name, raw value, type and data of every
+     *        attribute
+     * @return the raw node chunk
+     */
+    private static byte[] startElement
+	(final int line,
+	 final int name,
+	 final int[][] attributes)
+    {
+	final int size = 36 + 20 * attributes.length;
+	final ByteBuffer b = ByteBuffer.allocate(size)
+	    .order(ByteOrder.LITTLE_ENDIAN);
+	b.putShort((short)RES_XML_START_ELEMENT_TYPE).putShort((short)16)
+	    .putInt(size).putInt(line).putInt(NONE);
+	b.putInt(NONE).putInt(name)
+	    .putShort((short)20).putShort((short)20)
+	    .putShort((short)attributes.length)
+	    .putShort((short)0).putShort((short)0).putShort((short)0);
+	for(final int[] a: attributes) {
+	    b.putInt(a[0]).putInt(a[1]).putInt(a[2])
+		.putShort((short)8).put((byte)0).put((byte)a[3]).putInt(a[4]);
+	}
+	return b.array();
+    }
+
+    /**
+     * Build an end element node.
+     *
+     * @param line the source line number
+     * @param name the element name index
+     * @return the raw node chunk
+     */
+    private static byte[] endElement
+	(final int line,
+	 final int name)
+    {
+	return ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN)
+	    .putShort((short)RES_XML_END_ELEMENT_TYPE).putShort((short)16)
+	    .putInt(24).putInt(line).putInt(NONE)
+	    .putInt(NONE).putInt(name).array();
+    }
+
+    /**
+     * Encode a length prefix.
+     *
+     * @param out the output
+     * @param length the length
+     * @param utf8 whether to use the UTF-8 pool encoding
+     */
+    private static void writeLength
+	(final ByteArrayOutputStream out,
+	 final int length,
+	 final boolean utf8)
+    {
+	if(utf8) {
+	    if(length > 0x7F)
+		out.write(((length >> 8) & 0x7F) | 0x80);
+	    out.write(length & 0xFF);
+	}
+	else {
+	    if(length > 0x7FFF) {
+		final int high = ((length >> 16) & 0x7FFF) | 0x8000;
+		out.write(high & 0xFF);
+		out.write(high >> 8);
+	    }
+	    out.write(length & 0xFF);
+	    out.write((length >> 8) & 0xFF);
+	}
+    }
+
+    /**
+     * Encode the string pool chunk.
+     *
+     * @return the raw chunk
+     */
+    private byte[] stringPool
+	()
+    {
+	final boolean utf8 = (flags & UTF8_FLAG) != 0;
+	final ByteArrayOutputStream data = new ByteArrayOutputStream();
+	final int[] offsets = new int[strings.size()];
+	for(int i = 0; i < offsets.length; i++) {
+	    offsets[i] = data.size();
+	    final String s = strings.get(i);
+	    if(utf8) {
+		final byte[] bytes = s.getBytes(UTF8);
+		writeLength(data, s.length(), true);
+		writeLength(data, bytes.length, true);
+		data.write(bytes, 0, bytes.length);
+		data.write(0);
+	    }
+	    else {
+		writeLength(data, s.length(), false);
+		for(int j = 0; j < s.length(); j++) {
+		    data.write(s.charAt(j) & 0xFF);
+		    data.write(s.charAt(j) >> 8);
+		}
+		data.write(0);
+		data.write(0);
+	    }
+	}
+	while(data.size() % 4 != 0)
+	    data.write(0);
+	final int start = 28 + 4 * offsets.length;
+	final ByteBuffer b = ByteBuffer.allocate(start + data.size())
+	    .order(ByteOrder.LITTLE_ENDIAN);
+	/* Inserted strings break the sort order */
+	b.putShort((short)RES_STRING_POOL_TYPE).putShort((short)28)
+	    .putInt(start + data.size()).putInt(offsets.length).putInt(0)
+	    .putInt(flags & ~SORTED_FLAG).putInt(start).putInt(0);
+	for(final int o: offsets)
+	    b.putInt(o);
+	b.put(data.toByteArray());
+	return b.array();
+    }
+
+    /**
+     * Encode the manifest.
+     *
+     * @return the manifest contents
+     */
+    public byte[] toByteArray
+	()
+    {
+	final byte[] pool = stringPool();
+	final int mapSize = 8 + 4 * resourceIds.size();
+	int size = 8 + pool.length + mapSize;
+	for(final byte[] node: nodes)
+	    size += node.length;
+	final ByteBuffer b = ByteBuffer.allocate(size)
+	    .order(ByteOrder.LITTLE_ENDIAN);
+	b.putShort((short)RES_XML_TYPE).putShort((short)8).putInt(size);
+	b.put(pool);
+	b.putShort((short)RES_XML_RESOURCE_MAP_TYPE).putShort((short)8)
+	    .putInt(mapSize);
+	for(final int id: resourceIds)
+	    b.putInt(id);
+	for(final byte[] node: nodes)
+	    b.put(node);
+	return b.array();
+    }
+}
@@ -0,0 +1,148 @@
+package com.sysdream.fino.injector;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Merge Fino classes into a target dex file.
+ *
+ * Merging relies on the <code>DexMerger</code> shipped with the Android SDK
+ * build tools (<code>build-tools/&lt;version&gt;/lib/dx.jar</code>), which
+ * must be on the class path. It is loaded by reflection so that the tool
+ * builds without the SDK, and so that both the two-dex constructor of older
+ * build tools and the dex array constructor of newer ones are supported.
+ *
+ * The injector dex is parsed once per worker thread and reused for every
+ * target processed by that thread.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class DexMerge
+{
+    /**
+     * <code>com.android.dex.Dex</code>
+     */
+    private final Class<?> dexClass;
+
+    /**
+     * <code>Dex(byte[])</code>
+     */
+    private final Constructor<?> dexConstructor;
+
+    /**
+     * <code>Dex.getBytes()</code>
+     */
+    private final Method getBytes;
+
+    /**
+     * <code>DexMerger</code> constructor
+     */
+    private final Constructor<?> mergerConstructor;
+
+    /**
+     * <code>DexMerger.merge()</code>
+     */
+    private final Method merge;
+
+    /**
+     * <code>CollisionPolicy.KEEP_FIRST</code>
+     */
+    private final Object keepFirst;
+
+    /**
+     * <code>DxContext</code> constructor, for newer build tools
+     */
+    private final Constructor<?> contextConstructor;
+
+    /**
+     * Raw injector dex
+     */
+    private final byte[] injector;
+
+    /**
+     * Parsed injector dex, per worker thread
+     */
+    private final ThreadLocal<Object> parsed = new ThreadLocal<Object>();
+
+    /**
+     * Constructor
+     *
+     * @param injector the dex file holding Fino classes
+     * @throws IOException if the SDK dex merger is not on the class path
+     */
+    public DexMerge
+	(final byte[] injector)
+	throws IOException
+    {
+	this.injector = injector;
+	try {
+	    dexClass = Class.forName("com.android.dex.Dex");
+	    dexConstructor = dexClass.getConstructor(byte[].class);
+	    getBytes = dexClass.getMethod("getBytes");
+	    final Class<?> merger = Class.forName("com.android.dx.merge.DexMerger");
+	    final Class<?> policy = Class.forName("com.android.dx.merge.CollisionPolicy");
+	    keepFirst = policy.getField("KEEP_FIRST").get(null);
+	    merge = merger.getMethod("merge");
+	    Constructor<?> c = null;
+	    Constructor<?> context = null;
+	    try {
+		final Class<?> dxContext = Class.forName("com.android.dx.command.dexer.DxContext");
+		c = merger.getConstructor
+		    (Array.newInstance(dexClass, 0).getClass(), policy, dxContext);
+		context = dxContext.getConstructor();
+	    } catch (ClassNotFoundException e) {
+		c = merger.getConstructor(dexClass, dexClass, policy);
+	    }
+	    mergerConstructor = c;
+	    contextConstructor = context;
+	} catch (Exception e) {
+	    throw new IOException
+		("dx.jar from the Android SDK build tools must be on the class path: "
+		 + e);
+	}
+    }
+
+    /**
+     * Merge Fino classes into a target dex.
+     *
+     * Target classes win on collision, so that injecting twice is harmless.
+     *
+     * @param target the target dex contents
+     * @return the merged dex contents
+     * @throws IOException if merging fails, for instance when the merged dex
+     *         exceeds format limits
+     */
+    public byte[] merge
+	(final byte[] target)
+	throws IOException
+    {
+	try {
+	    Object fino = parsed.get();
+	    if(fino == null) {
+		fino = dexConstructor.newInstance((Object)injector);
+		parsed.set(fino);
+	    }
+	    final Object dex = dexConstructor.newInstance((Object)target);
+	    final Object merger;
+	    if(contextConstructor != null) {
+		final Object dexes = Array.newInstance(dexClass, 2);
+		Array.set(dexes, 0, dex);
+		Array.set(dexes, 1, fino);
+		merger = mergerConstructor.newInstance
+		    (dexes, keepFirst, contextConstructor.newInstance());
+	    }
+	    else {
+		merger = mergerConstructor.newInstance(dex, fino, keepFirst);
+	    }
+	    return (byte[])getBytes.invoke(merge.invoke(merger));
+	} catch (InvocationTargetException e) {
+	    throw new IOException("dex merge failed: " + e.getCause());
+	} catch (Exception e) {
+	    throw new IOException("dex merge failed: " + e);
+	}
+    }
+}
@@ -0,0 +1,371 @@
+package com.sysdream.fino.injector;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Inject the Fino inspection service into existing APK files.
+ *
+ * This is a faster replacement for <code>inject.sh</code>: instead of
+ * decoding and rebuilding both packages with apktool, Fino classes are
+ * merged directly into the target <code>classes.dex</code>, the service is
+ * declared by editing the compiled manifest in place, every other entry is
+ * copied as is, and the result is signed with <code>jarsigner</code>.
+ *
+ * Usage:
+ *
+ *   java -cp fino-injector.jar:dx.jar com.sysdream.fino.injector.Injector \
+ *        [-injector bin/injector.apk] [-keystore ~/.android/debug.keystore] \
+ *        [-storepass android] [-alias androiddebugkey] [-threads n] \
+ *        &lt;original.apk|directory&gt; &lt;output.apk|directory&gt;
+ *
+ * When given a directory, every APK it contains is injected in parallel,
+ * using all available cores by default.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Injector
+{
+    /**
+     * Injected service class
+     */
+    static final String SERVICE = "com.sysdream.fino.InspectionService";
+
+    /**
+     * Injected service action
+     */
+    static final String ACTION = "com.sysdream.fino.inspection";
+
+    /**
+     * Minimum SDK version required by the service
+     */
+    static final int MIN_SDK_VERSION = 14;
+
+    /**
+     * Fino classes merger
+     */
+    private final DexMerge dex;
+
+    /**
+     * Keystore path
+     */
+    private final String keystore;
+
+    /**
+     * Keystore password
+     */
+    private final String storepass;
+
+    /**
+     * Key alias
+     */
+    private final String alias;
+
+    /**
+     * Constructor
+     *
+     * @param injector the prebuilt Fino APK
+     * @param keystore the keystore path
+     * @param storepass the keystore password
+     * @param alias the signing key alias
+     * @throws IOException if the injector APK cannot be read
+     */
+    public Injector
+	(final File injector,
+	 final String keystore,
+	 final String storepass,
+	 final String alias)
+	throws IOException
+    {
+	final ZipFile apk = new ZipFile(injector);
+	try {
+	    final ZipEntry classes = apk.getEntry("classes.dex");
+	    if(classes == null)
+		throw new IOException("no classes.dex in " + injector);
+	    dex = new DexMerge(read(apk, classes));
+	} finally {
+	    apk.close();
+	}
+	this.keystore = keystore;
+	this.storepass = storepass;
+	this.alias = alias;
+    }
+
+    /**
+     * Read a whole zip entry.
+     *
+     * @param zip the zip file
+     * @param entry the entry
+     * @return the entry contents
+     * @throws IOException on read errors
+     */
+    private static byte[] read
+	(final ZipFile zip,
+	 final ZipEntry entry)
+	throws IOException
+    {
+	final InputStream in = zip.getInputStream(entry);
+	try {
+	    final ByteArrayOutputStream out = new ByteArrayOutputStream
+		((int)Math.max(entry.getSize(), 32));
+	    final byte[] buffer = new byte[65536];
+	    for(int n; (n = in.read(buffer)) > 0;)
+		out.write(buffer, 0, n);
+	    return out.toByteArray();
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Check if an entry belongs to the original signature.
+     *
+     * @param name the entry name
+     * @return <code>true</code> for signature files
+     */
+    private static boolean isSignature
+	(final String name)
+    {
+	if(!name.startsWith("META-INF/"))
+	    return false;
+	final String upper = name.toUpperCase();
+	return upper.equals("META-INF/MANIFEST.MF") || upper.endsWith(".SF")
+	    || upper.endsWith(".RSA") || upper.endsWith(".DSA")
+	    || upper.endsWith(".EC");
+    }
+
+    /**
+     * Write a zip entry, keeping the original compression method.
+     *
+     * @param out the output zip
+     * @param name the entry name
+     * @param data the entry contents
+     * @param method the compression method
+     * @throws IOException on write errors
+     */
+    private static void write
+	(final ZipOutputStream out,
+	 final String name,
+	 final byte[] data,
+	 final int method)
+	throws IOException
+    {
+	final ZipEntry entry = new ZipEntry(name);
+	entry.setMethod(method);
+	if(method == ZipEntry.STORED) {
+	    final CRC32 crc = new CRC32();
+	    crc.update(data);
+	    entry.setCrc(crc.getValue());
+	    entry.setSize(data.length);
+	    entry.setCompressedSize(data.length);
+	}
+	out.putNextEntry(entry);
+	out.write(data);
+	out.closeEntry();
+    }
+
+    /**
+     * Inject a single APK.
+     *
+     * @param source the original APK
+     * @param target the injected and signed APK
+     * @throws IOException on failure
+     */
+    public void inject
+	(final File source,
+	 final File target)
+	throws IOException
+    {
+	final File unsigned = new File(target.getPath() + ".unsigned");
+	final ZipFile in = new ZipFile(source);
+	final ZipOutputStream out = new ZipOutputStream
+	    (new FileOutputStream(unsigned));
+	try {
+	    boolean merged = false;
+	    boolean declared = false;
+	    final Enumeration<? extends ZipEntry> entries = in.entries();
+	    while(entries.hasMoreElements()) {
+		final ZipEntry entry = entries.nextElement();
+		final String name = entry.getName();
+		if(entry.isDirectory() || isSignature(name))
+		    continue;
+		byte[] data = read(in, entry);
+		if(name.equals("classes.dex")) {
+		    data = dex.merge(data);
+		    merged = true;
+		}
+		else if(name.equals("AndroidManifest.xml")) {
+		    final BinaryManifest manifest = new BinaryManifest(data);
+		    if(!manifest.contains(SERVICE))
+			manifest.addService(SERVICE, ACTION);
+		    manifest.requireMinSdkVersion(MIN_SDK_VERSION);
+		    data = manifest.toByteArray();
+		    declared = true;
+		}
+		write(out, name, data, entry.getMethod());
+	    }
+	    if(!merged || !declared)
+		throw new IOException
+		    ("no classes.dex or AndroidManifest.xml in " + source);
+	} finally {
+	    out.close();
+	    in.close();
+	}
+	try {
+	    sign(unsigned, target);
+	} finally {
+	    unsigned.delete();
+	}
+    }
+
+    /**
+     * Sign an APK with <code>jarsigner</code>.
+     *
+     * @param unsigned the unsigned APK
+     * @param signed the signed APK
+     * @throws IOException if signing fails
+     */
+    private void sign
+	(final File unsigned,
+	 final File signed)
+	throws IOException
+    {
+	final Process p = new ProcessBuilder
+	    ("jarsigner", "-sigalg", "SHA1withRSA", "-digestalg", "SHA1",
+	     "-keystore", keystore, "-storepass", storepass,
+	     "-signedjar", signed.getPath(), unsigned.getPath(), alias)
+	    .redirectErrorStream(true)
+	    .start();
+	final StringBuilder log = new StringBuilder();
+	final BufferedReader reader = new BufferedReader
+	    (new InputStreamReader(p.getInputStream()));
+	for(String line; (line = reader.readLine()) != null;)
+	    log.append(line).append('\n');
+	try {
+	    if(p.waitFor() != 0)
+		throw new IOException("jarsigner failed:\n" + log);
+	} catch (InterruptedException e) {
+	    p.destroy();
+	    throw new IOException("interrupted while signing");
+	}
+    }
+
+    /**
+     * Inject every APK of a directory in parallel.
+     *
+     * @param sources the original APKs
+     * @param output the output directory
+     * @param threads the number of worker threads
+     * @return the number of failures
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int injectAll
+	(final List<File> sources,
+	 final File output,
+	 final int threads)
+	throws InterruptedException
+    {
+	final ExecutorService pool = Executors.newFixedThreadPool(threads);
+	final List<Future<?>> results = new ArrayList<Future<?>>();
+	for(final File source: sources) {
+	    results.add(pool.submit(new Runnable() {
+		    public void run() {
+			final long start = System.nanoTime();
+			try {
+			    inject(source, new File(output, source.getName()));
+			    System.out.println
+				(source.getName() + ": ok in "
+				 + (System.nanoTime() - start) / 1000000 + " ms");
+			} catch (IOException e) {
+			    throw new RuntimeException(e.getMessage(), e);
+			}
+		    }
+		}));
+	}
+	pool.shutdown();
+	int failures = 0;
+	for(int i = 0; i < results.size(); i++) {
+	    try {
+		results.get(i).get();
+	    } catch (ExecutionException e) {
+		failures++;
+		System.err.println
+		    (sources.get(i).getName() + ": " + e.getCause().getMessage());
+	    }
+	}
+	return failures;
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * @param args see the class documentation
+     * @throws Exception on fatal errors
+     */
+    public static void main
+	(final String[] args)
+	throws Exception
+    {
+	String injector = "bin/injector.apk";
+	String keystore = System.getProperty("user.home")
+	    + "/.android/debug.keystore";
+	String storepass = "android";
+	String alias = "androiddebugkey";
+	int threads = Runtime.getRuntime().availableProcessors();
+	final List<String> files = new ArrayList<String>();
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-injector") && i + 1 < args.length)
+		injector = args[++i];
+	    else if(args[i].equals("-keystore") && i + 1 < args.length)
+		keystore = args[++i];
+	    else if(args[i].equals("-storepass") && i + 1 < args.length)
+		storepass = args[++i];
+	    else if(args[i].equals("-alias") && i + 1 < args.length)
+		alias = args[++i];
+	    else if(args[i].equals("-threads") && i + 1 < args.length)
+		threads = Integer.parseInt(args[++i]);
+	    else
+		files.add(args[i]);
+	}
+	if(files.size() != 2) {
+	    System.err.println
+		("usage: Injector [-injector apk] [-keystore path]"
+		 + " [-storepass pass] [-alias alias] [-threads n]"
+		 + " <original.apk|dir> <output.apk|dir>");
+	    System.exit(2);
+	}
+	final Injector i = new Injector
+	    (new File(injector), keystore, storepass, alias);
+	final File source = new File(files.get(0));
+	final File output = new File(files.get(1));
+	if(!source.isDirectory()) {
+	    i.inject(source, output);
+	    return;
+	}
+	final List<File> sources = new ArrayList<File>();
+	final File[] listing = source.listFiles();
+	if(listing != null)
+	    for(final File f: listing)
+		if(f.isFile() && f.getName().endsWith(".apk"))
+		    sources.add(f);
+	output.mkdirs();
+	System.exit(i.injectAll(sources, output, threads) == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,515 @@
+package com.sysdream.fino.replay;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import android.os.Binder;
+
+import com.sysdream.fino.IInspectionService;
+import com.sysdream.fino.InspectionStub;
+import com.sysdream.fino.Jobs;
+
+/**
+ * Drive the inspection service with concurrent simulated clients.
+ *
+ * Every client runs a weighted mix of typical calls against a synthetic
+ * object graph, through an in-process binder that marshals every call:
+ *
+ *   resolve: resolve an expression down a list item
+ *   list: list fields, methods or entry points
+ *   invoke: invoke a method, then release its result
+ *   iterate: list the items of a collection
+ *   push: push a string, then release it
+ *
+ * For every number of clients, the service is rebuilt, warmed up, then
+ * measured for a fixed duration. The report gives the throughput, latency
+ * percentiles and the time client threads spent blocked on monitors or
+ * waiting, as reported by the JVM, overall and by operation.
+ *
+ * Usage:
+ *
+ *   java -cp fino-replay.jar com.sysdream.fino.replay.LoadTest \
+ *        [-clients 1,2,4,8] [-duration ms] [-warmup ms] [-items n] \
+ *        [-mix resolve:3,list:2,invoke:1,iterate:1,push:2] [-sessions]
+ *
+ * With <code>-sessions</code>, every client opens its own session instead of
+ * sharing the default entry point register.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class LoadTest
+{
+    /**
+     * Operation names, in weight order
+     */
+    static final String[] OPERATIONS =
+    { "resolve", "list", "invoke", "iterate", "push" };
+
+    static final int RESOLVE = 0;
+    static final int LIST = 1;
+    static final int INVOKE = 2;
+    static final int ITERATE = 3;
+    static final int PUSH = 4;
+
+    /**
+     * Entry point of the workload root, after the stand-in application
+     */
+    static final int ROOT = 1;
+
+    /**
+     * Item of the synthetic object graph
+     */
+    public static class Item
+    {
+	String name;
+	int value;
+	Item next;
+	int[] data = new int[16];
+
+	Item
+	    (final int i)
+	{
+	    name = "item" + i;
+	    value = i;
+	}
+
+	public String toString
+	    ()
+	{
+	    return name;
+	}
+    }
+
+    /**
+     * Root of the synthetic object graph
+     */
+    public static class Catalog
+    {
+	String title = "catalog";
+	ArrayList<Item> items = new ArrayList<Item>();
+	HashMap<String, Item> byName = new HashMap<String, Item>();
+	Item first;
+
+	Catalog
+	    (final int count)
+	{
+	    Item previous = null;
+	    for(int i = 0; i < count; i++) {
+		final Item item = new Item(i);
+		items.add(item);
+		byName.put(item.name, item);
+		if(previous != null)
+		    previous.next = item;
+		previous = item;
+	    }
+	    first = items.isEmpty() ? null : items.get(0);
+	}
+    }
+
+    /**
+     * Growable list of latencies
+     */
+    static final class Latencies
+    {
+	long[] values = new long[1024];
+	int size = 0;
+
+	void add
+	    (final long v)
+	{
+	    if(size == values.length)
+		values = Arrays.copyOf(values, size * 2);
+	    values[size++] = v;
+	}
+
+	void addAll
+	    (final Latencies other)
+	{
+	    for(int i = 0; i < other.size; i++)
+		add(other.values[i]);
+	}
+
+	/**
+	 * Get a percentile, sorting the values.
+	 *
+	 * @param p the percentile, between 0 and 100
+	 * @return the value in nanoseconds
+	 */
+	long percentile
+	    (final double p)
+	{
+	    if(size == 0)
+		return 0;
+	    Arrays.sort(values, 0, size);
+	    final int i = (int)Math.ceil(p / 100 * size) - 1;
+	    return values[Math.max(0, Math.min(size - 1, i))];
+	}
+    }
+
+    /**
+     * A simulated client
+     */
+    class Client
+	extends Thread
+    {
+	/**
+	 * Client view of the service
+	 */
+	private final IInspectionService service;
+
+	/**
+	 * Operation choice, seeded per client
+	 */
+	private final Random random;
+
+	/**
+	 * Latencies, by operation
+	 */
+	final Latencies[] latencies = new Latencies[OPERATIONS.length];
+
+	/**
+	 * Failed calls
+	 */
+	int errors = 0;
+
+	/**
+	 * Field indices in the workload root
+	 */
+	private int items;
+	private int first;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id the client number
+	 * @param service the client view of the service
+	 */
+	Client
+	    (final int id,
+	     final IInspectionService service)
+	{
+	    super("client-" + id);
+	    this.service = service;
+	    this.random = new Random(id);
+	    for(int i = 0; i < latencies.length; i++)
+		latencies[i] = new Latencies();
+	}
+
+	/**
+	 * Pick a weighted operation.
+	 *
+	 * @return the operation
+	 */
+	private int pick
+	    ()
+	{
+	    int r = random.nextInt(totalWeight);
+	    for(int i = 0; i < weights.length; i++) {
+		r -= weights[i];
+		if(r < 0)
+		    return i;
+	    }
+	    return PUSH;
+	}
+
+	/**
+	 * Run a single operation.
+	 *
+	 * @param op the operation
+	 * @throws Exception on call failures
+	 */
+	private void call
+	    (final int op)
+	    throws Exception
+	{
+	    switch(op) {
+	    case RESOLVE:
+		/* The last item has no successor */
+		service.resolve(ROOT, "items[" + random.nextInt(itemCount - 1)
+				+ "].next.name");
+		break;
+	    case LIST:
+		switch(random.nextInt(3)) {
+		case 0:
+		    service.getFields(ROOT, new int[] { first });
+		    break;
+		case 1:
+		    service.getMethods(ROOT, new int[] { first });
+		    break;
+		default:
+		    service.getEntryPoints();
+		}
+		break;
+	    case INVOKE:
+		service.release(service.invokeMethodByName
+				(ROOT, new int[] { items }, "size", new int[0]));
+		break;
+	    case ITERATE:
+		service.getIterable(ROOT, new int[] { items });
+		break;
+	    default:
+		service.release(service.pushString
+				(getName() + "-" + random.nextInt(itemCount)));
+	    }
+	}
+
+	/**
+	 * Find field indices, then run operations until stopped.
+	 */
+	public void run
+	    ()
+	{
+	    try {
+		final String[] fields = service.getFields(ROOT, new int[0]);
+		for(int i = 0; i < fields.length; i++) {
+		    if(fields[i].startsWith("items:"))
+			items = i;
+		    else if(fields[i].startsWith("first:"))
+			first = i;
+		}
+	    } catch (Exception e) {
+		errors++;
+		return;
+	    }
+	    while(!stopped) {
+		final int op = pick();
+		final boolean measured = measuring;
+		final long start = System.nanoTime();
+		try {
+		    call(op);
+		} catch (Exception e) {
+		    if(measured)
+			errors++;
+		    continue;
+		}
+		final long duration = System.nanoTime() - start;
+		if(measured && measuring)
+		    latencies[op].add(duration);
+	    }
+	}
+    }
+
+    /**
+     * Operation weights
+     */
+    private final int[] weights;
+
+    /**
+     * Sum of operation weights
+     */
+    private final int totalWeight;
+
+    /**
+     * Number of items in the workload
+     */
+    private final int itemCount;
+
+    /**
+     * Whether clients open their own session
+     */
+    private final boolean sessions;
+
+    /**
+     * Whether latencies are recorded
+     */
+    private volatile boolean measuring = false;
+
+    /**
+     * Whether clients must stop
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor
+     *
+     * @param weights the operation weights
+     * @param itemCount the number of items in the workload
+     * @param sessions whether clients open their own session
+     */
+    public LoadTest
+	(final int[] weights,
+	 final int itemCount,
+	 final boolean sessions)
+    {
+	this.weights = weights;
+	int total = 0;
+	for(final int w: weights)
+	    total += w;
+	this.totalWeight = total;
+	this.itemCount = itemCount;
+	this.sessions = sessions;
+    }
+
+    /**
+     * Describe a latency in microseconds.
+     *
+     * @param nanos the latency in nanoseconds
+     * @return the latency in microseconds
+     */
+    private static String micros
+	(final long nanos)
+    {
+	return Long.toString(nanos / 1000);
+    }
+
+    /**
+     * Run one concurrency level and print its results.
+     *
+     * @param count the number of clients
+     * @param warmup the warm-up time in milliseconds
+     * @param duration the measured time in milliseconds
+     * @throws Exception on setup failures
+     */
+    public void run
+	(final int count,
+	 final long warmup,
+	 final long duration)
+	throws Exception
+    {
+	final Jobs jobs = new Jobs(Replay.JOB_THREADS, Replay.JOB_QUEUE);
+	final List<Object> roots = new ArrayList<Object>();
+	roots.add(new Catalog(itemCount));
+	final InspectionStub stub = Replay.newService(jobs, roots);
+	final IInspectionService shared =
+	    IInspectionService.Stub.asInterface(new LocalBinder(stub));
+	final Client[] clients = new Client[count];
+	for(int i = 0; i < count; i++) {
+	    IInspectionService service = shared;
+	    if(sessions)
+		service = IInspectionService.Stub.asInterface
+		    (new LocalBinder(shared.openSession(new Binder()).asBinder()));
+	    clients[i] = new Client(i, service);
+	}
+	final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	final boolean contention = threads.isThreadContentionMonitoringSupported();
+	if(contention)
+	    threads.setThreadContentionMonitoringEnabled(true);
+	measuring = false;
+	stopped = false;
+	for(final Client c: clients)
+	    c.start();
+	Thread.sleep(warmup);
+	final long[] before = contention(threads, clients);
+	measuring = true;
+	final long start = System.nanoTime();
+	Thread.sleep(duration);
+	measuring = false;
+	final long elapsed = System.nanoTime() - start;
+	final long[] after = contention(threads, clients);
+	stopped = true;
+	for(final Client c: clients)
+	    c.join();
+	jobs.shutdown();
+	/* Merge client latencies */
+	final Latencies all = new Latencies();
+	final Latencies[] byOp = new Latencies[OPERATIONS.length];
+	int errors = 0;
+	for(int op = 0; op < byOp.length; op++) {
+	    byOp[op] = new Latencies();
+	    for(final Client c: clients)
+		byOp[op].addAll(c.latencies[op]);
+	    all.addAll(byOp[op]);
+	}
+	for(final Client c: clients)
+	    errors += c.errors;
+	System.out.println
+	    (count + "\t" + all.size + "\t"
+	     + (long)(all.size * 1e9 / elapsed) + "\t"
+	     + micros(all.percentile(50)) + "\t" + micros(all.percentile(90)) + "\t"
+	     + micros(all.percentile(99)) + "\t" + micros(all.percentile(100)) + "\t"
+	     + errors + "\t"
+	     + (contention ? (after[0] - before[0]) + "\t"
+		+ (after[1] - before[1]) + "\t" + (after[2] - before[2])
+		: "-\t-\t-"));
+	for(int op = 0; op < byOp.length; op++) {
+	    if(byOp[op].size == 0)
+		continue;
+	    System.out.println
+		("\t" + OPERATIONS[op] + "\t" + byOp[op].size + "\t"
+		 + micros(byOp[op].percentile(50)) + "\t"
+		 + micros(byOp[op].percentile(99)));
+	}
+    }
+
+    /**
+     * Sum contention counters of client threads.
+     *
+     * @param threads the thread management bean
+     * @param clients the client threads
+     * @return the blocked count, blocked time and waited time, in
+     *         milliseconds
+     */
+    private static long[] contention
+	(final ThreadMXBean threads,
+	 final Client[] clients)
+    {
+	final long[] result = new long[3];
+	for(final Client c: clients) {
+	    final ThreadInfo info = threads.getThreadInfo(c.getId());
+	    if(info == null)
+		continue;
+	    result[0] += info.getBlockedCount();
+	    result[1] += Math.max(0, info.getBlockedTime());
+	    result[2] += Math.max(0, info.getWaitedTime());
+	}
+	return result;
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * @param args see the class documentation
+     * @throws Exception on fatal errors
+     */
+    public static void main
+	(final String[] args)
+	throws Exception
+    {
+	String clients = "1,2,4,8";
+	String mix = "resolve:3,list:2,invoke:1,iterate:1,push:2";
+	long duration = 5000;
+	long warmup = 1000;
+	int items = 100;
+	boolean sessions = false;
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-clients") && i + 1 < args.length)
+		clients = args[++i];
+	    else if(args[i].equals("-mix") && i + 1 < args.length)
+		mix = args[++i];
+	    else if(args[i].equals("-duration") && i + 1 < args.length)
+		duration = Long.parseLong(args[++i]);
+	    else if(args[i].equals("-warmup") && i + 1 < args.length)
+		warmup = Long.parseLong(args[++i]);
+	    else if(args[i].equals("-items") && i + 1 < args.length)
+		items = Integer.parseInt(args[++i]);
+	    else if(args[i].equals("-sessions"))
+		sessions = true;
+	    else {
+		System.err.println
+		    ("usage: LoadTest [-clients 1,2,4,8] [-duration ms]"
+		     + " [-warmup ms] [-items n] [-mix op:weight,...] [-sessions]");
+		System.exit(2);
+	    }
+	}
+	final int[] weights = new int[OPERATIONS.length];
+	for(final String entry: mix.split(",")) {
+	    final String[] kv = entry.split(":");
+	    final int op = Arrays.asList(OPERATIONS).indexOf(kv[0]);
+	    if(op < 0 || kv.length != 2)
+		throw new IllegalArgumentException("bad mix entry: " + entry);
+	    weights[op] = Integer.parseInt(kv[1]);
+	}
+	final LoadTest test = new LoadTest(weights, Math.max(items, 2), sessions);
+	System.out.println("clients\tcalls\tcalls/s\tp50\tp90\tp99\tmax\terrors"
+			   + "\tblocked\tblocked ms\twaited ms");
+	for(final String n: clients.split(","))
+	    test.run(Integer.parseInt(n.trim()), warmup, duration);
+    }
+}
@@ -0,0 +1,61 @@
+package com.sysdream.fino.replay;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/**
+ * In-process stand-in for a remote binder.
+ *
+ * Transactions are copied to fresh parcels both ways, as the binder driver
+ * does, and run on the calling thread. Since no interface is attached,
+ * <code>asInterface</code> returns a proxy, so that clients go through the
+ * same marshalling as remote ones.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class LocalBinder
+    extends Binder
+{
+    /**
+     * Service binder
+     */
+    private final IBinder target;
+
+    /**
+     * Constructor
+     *
+     * @param target the service binder
+     */
+    public LocalBinder
+	(final IBinder target)
+    {
+	this.target = target;
+    }
+
+    /**
+     * Forward a transaction to the service.
+     */
+    protected boolean onTransact
+	(final int code,
+	 final Parcel data,
+	 final Parcel reply,
+	 final int flags)
+	throws RemoteException
+    {
+	final Parcel request = Parcel.obtain();
+	final Parcel response = Parcel.obtain();
+	try {
+	    request.appendFrom(data, 0, data.dataSize());
+	    final boolean result = target.transact(code, request, response, flags);
+	    if(reply != null)
+		reply.appendFrom(response, 0, response.dataSize());
+	    return result;
+	} finally {
+	    request.recycle();
+	    response.recycle();
+	}
+    }
+}
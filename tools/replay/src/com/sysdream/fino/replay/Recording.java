@@ -0,0 +1,182 @@
+package com.sysdream.fino.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sysdream.fino.Recorder;
+
+/**
+ * Transactions read from a recording, see <code>Recorder</code> for the
+ * format.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Recording
+{
+    /**
+     * A single recorded transaction
+     */
+    public static class Call
+    {
+	/**
+	 * Transaction code
+	 */
+	public final int code;
+
+	/**
+	 * Transaction flags
+	 */
+	public final int flags;
+
+	/**
+	 * Start offset from the recording start, in nanoseconds
+	 */
+	public final long offset;
+
+	/**
+	 * Recorded duration, in nanoseconds
+	 */
+	public final long duration;
+
+	/**
+	 * Recorded outcome
+	 */
+	public final byte status;
+
+	/**
+	 * Marshalled request, <code>null</code> if it held binders
+	 */
+	public final byte[] request;
+
+	/**
+	 * Marshalled reply, <code>null</code> if unavailable
+	 */
+	public final byte[] reply;
+
+	/**
+	 * Constructor
+	 */
+	Call
+	    (final int code,
+	     final int flags,
+	     final long offset,
+	     final long duration,
+	     final byte status,
+	     final byte[] request,
+	     final byte[] reply)
+	{
+	    this.code = code;
+	    this.flags = flags;
+	    this.offset = offset;
+	    this.duration = duration;
+	    this.status = status;
+	    this.request = request;
+	    this.reply = reply;
+	}
+    }
+
+    /**
+     * Recording start time, in milliseconds
+     */
+    private final long startTime;
+
+    /**
+     * Transactions, in order
+     */
+    private final List<Call> calls = new ArrayList<Call>();
+
+    /**
+     * Read a recording.
+     *
+     * A truncated last record, as left by a service killed while recording,
+     * is ignored.
+     *
+     * @param file the recording
+     * @throws IOException if the file is not a recording
+     */
+    public Recording
+	(final File file)
+	throws IOException
+    {
+	final DataInputStream in = new DataInputStream
+	    (new BufferedInputStream(new FileInputStream(file), 65536));
+	try {
+	    if(in.readInt() != Recorder.MAGIC)
+		throw new IOException(file + " is not a recording");
+	    final int version = in.readInt();
+	    if(version != Recorder.VERSION)
+		throw new IOException("unsupported recording version " + version);
+	    startTime = in.readLong();
+	    for(;;) {
+		final int code;
+		try {
+		    code = in.readInt();
+		} catch (EOFException e) {
+		    break;
+		}
+		try {
+		    final int flags = in.readInt();
+		    final long offset = in.readLong();
+		    final long duration = in.readLong();
+		    final byte status = in.readByte();
+		    final byte[] request = read(in);
+		    final byte[] reply = read(in);
+		    calls.add(new Call(code, flags, offset, duration, status,
+				       request, reply));
+		} catch (EOFException e) {
+		    break;
+		}
+	    }
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Read a length-prefixed byte array.
+     *
+     * @param in the input
+     * @return the array, or <code>null</code> for a negative length
+     * @throws IOException on read errors
+     */
+    private static byte[] read
+	(final DataInputStream in)
+	throws IOException
+    {
+	final int length = in.readInt();
+	if(length < 0)
+	    return null;
+	final byte[] result = new byte[length];
+	in.readFully(result);
+	return result;
+    }
+
+    /**
+     * Get the recording start time.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStartTime
+	()
+    {
+	return startTime;
+    }
+
+    /**
+     * Get the recorded transactions.
+     *
+     * @return the transactions, in order
+     */
+    public List<Call> getCalls
+	()
+    {
+	return calls;
+    }
+}
@@ -0,0 +1,341 @@
+package com.sysdream.fino.replay;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+import android.os.Parcel;
+
+import com.sysdream.fino.EntryPoints;
+import com.sysdream.fino.IInspectionService;
+import com.sysdream.fino.InspectionStub;
+import com.sysdream.fino.Jobs;
+import com.sysdream.fino.LifecycleTimeline;
+import com.sysdream.fino.LooperMonitor;
+import com.sysdream.fino.Profiler;
+import com.sysdream.fino.Recorder;
+import com.sysdream.fino.Sessions;
+
+/**
+ * Replay a recorded session against the inspection service on a desktop
+ * JVM, and compare call latencies with the recording.
+ *
+ * The service runs on stand-in Android classes, with a stand-in
+ * application context as first root, followed by an instance of every class
+ * given with <code>-root</code>. Calls are replayed in order on a fresh
+ * service for every pass, so that entry point indices match the recording
+ * as long as the roots do. Calls whose request held binder objects, such as
+ * callbacks and sessions, cannot be replayed and are skipped.
+ *
+ * Usage:
+ *
+ *   java -jar fino-replay.jar [-warmup n] [-root class]... [-v] recording
+ *
+ * Warm-up passes are not measured. With <code>-v</code>, every call of the
+ * measured pass is listed.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Replay
+{
+    /**
+     * Asynchronous invocation pool size, as in the service
+     */
+    static final int JOB_THREADS = 4;
+
+    /**
+     * Asynchronous invocation queue size, as in the service
+     */
+    static final int JOB_QUEUE = 32;
+
+    /**
+     * Replayed recording
+     */
+    private final Recording recording;
+
+    /**
+     * Extra root classes
+     */
+    private final List<Class<?>> roots;
+
+    /**
+     * Method names, by transaction code
+     */
+    private final Map<Integer, String> names = new HashMap<Integer, String>();
+
+    /**
+     * Per-method statistics, by method name
+     */
+    private final TreeMap<String, Stats> stats = new TreeMap<String, Stats>();
+
+    /**
+     * Latencies and outcomes of a single method
+     */
+    private static class Stats
+    {
+	final ArrayList<Long> recorded = new ArrayList<Long>();
+	final ArrayList<Long> replayed = new ArrayList<Long>();
+	int skipped = 0;
+	int changed = 0;
+	int differing = 0;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param recording the recording to replay
+     * @param roots extra root classes, instantiated for every pass
+     */
+    public Replay
+	(final Recording recording,
+	 final List<Class<?>> roots)
+    {
+	this.recording = recording;
+	this.roots = roots;
+	for(final Field f: IInspectionService.Stub.class.getDeclaredFields()) {
+	    if(!Modifier.isStatic(f.getModifiers())
+	       || !f.getName().startsWith("TRANSACTION_"))
+		continue;
+	    try {
+		f.setAccessible(true);
+		names.put(f.getInt(null),
+			  f.getName().substring("TRANSACTION_".length()));
+	    } catch (Exception e) {
+		/* Unnamed code */
+	    }
+	}
+    }
+
+    /**
+     * Get the method name of a transaction code.
+     *
+     * @param code the transaction code
+     * @return the method name, or the code if unknown
+     */
+    private String name
+	(final int code)
+    {
+	final String name = names.get(code);
+	return (name == null) ? "#" + code : name;
+    }
+
+    /**
+     * Marshall a reply for comparison.
+     *
+     * @param p the reply
+     * @return the reply contents, or <code>null</code> if it holds binders
+     */
+    private static byte[] marshall
+	(final Parcel p)
+    {
+	try {
+	    return p.marshall();
+	} catch (RuntimeException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Build a service on stand-in classes, as the Android service does.
+     *
+     * @param jobs the asynchronous invocation pool
+     * @param roots the roots registered after the stand-in application
+     * @return the service
+     */
+    static InspectionStub newService
+	(final Jobs jobs,
+	 final List<Object> roots)
+    {
+	final EntryPoints entryPoints = new EntryPoints();
+	final Sessions sessions = new Sessions(entryPoints);
+	final Context context = new Context();
+	sessions.addRoot(context);
+	for(final Object root: roots)
+	    sessions.addRoot(root);
+	return new InspectionStub
+	    (entryPoints, sessions, jobs, new Recorder(), new Profiler(),
+	     new LifecycleTimeline(), new LooperMonitor(), context);
+    }
+
+    /**
+     * Replay every call once on a fresh service.
+     *
+     * @param measure whether to record statistics
+     * @param verbose whether to list every call
+     * @throws Exception if the roots cannot be instantiated
+     */
+    public void run
+	(final boolean measure,
+	 final boolean verbose)
+	throws Exception
+    {
+	final List<Object> instances = new ArrayList<Object>();
+	for(final Class<?> root: roots)
+	    instances.add(root.getDeclaredConstructor().newInstance());
+	final Jobs jobs = new Jobs(JOB_THREADS, JOB_QUEUE);
+	final InspectionStub service = newService(jobs, instances);
+	try {
+	    int index = 0;
+	    for(final Recording.Call call: recording.getCalls()) {
+		final String name = name(call.code);
+		Stats s = stats.get(name);
+		if(s == null && measure) {
+		    s = new Stats();
+		    stats.put(name, s);
+		}
+		index++;
+		if(call.request == null) {
+		    if(measure)
+			s.skipped++;
+		    continue;
+		}
+		final Parcel data = Parcel.obtain();
+		final Parcel reply = Parcel.obtain();
+		data.unmarshall(call.request, 0, call.request.length);
+		byte status = Recorder.FAILED;
+		final long start = System.nanoTime();
+		try {
+		    status = service.transact(call.code, data, reply, call.flags) ?
+			Recorder.HANDLED : Recorder.UNHANDLED;
+		} catch (Exception e) {
+		    /* Replayed as is, exceptions are part of the workload */
+		}
+		final long duration = System.nanoTime() - start;
+		if(!measure)
+		    continue;
+		s.recorded.add(call.duration);
+		s.replayed.add(duration);
+		if(status != call.status)
+		    s.changed++;
+		else if(status == Recorder.HANDLED && call.reply != null
+			&& !Arrays.equals(call.reply, marshall(reply)))
+		    s.differing++;
+		if(verbose)
+		    System.out.println
+			(index + "\t" + name + "\t" + call.duration / 1000 + "\t"
+			 + duration / 1000 + "\t"
+			 + ((status != call.status) ? "changed" : "same"));
+	    }
+	} finally {
+	    jobs.shutdown();
+	}
+    }
+
+    /**
+     * Compute the median of latencies.
+     *
+     * @param values the latencies
+     * @return the median, 0 if empty
+     */
+    private static long median
+	(final List<Long> values)
+    {
+	if(values.isEmpty())
+	    return 0;
+	final Long[] sorted = values.toArray(new Long[values.size()]);
+	Arrays.sort(sorted);
+	return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Sum latencies.
+     *
+     * @param values the latencies
+     * @return the sum
+     */
+    private static long sum
+	(final List<Long> values)
+    {
+	long result = 0;
+	for(final long v: values)
+	    result += v;
+	return result;
+    }
+
+    /**
+     * Print per-method latency differences, in microseconds.
+     */
+    public void report
+	()
+    {
+	System.out.println("method\tcalls\tskipped\trecorded median\treplayed median"
+			   + "\trecorded total\treplayed total\tdelta\tchanged\tdiffering");
+	long recorded = 0;
+	long replayed = 0;
+	for(final Map.Entry<String, Stats> e: stats.entrySet()) {
+	    final Stats s = e.getValue();
+	    final long r = sum(s.recorded);
+	    final long p = sum(s.replayed);
+	    recorded += r;
+	    replayed += p;
+	    System.out.println
+		(e.getKey() + "\t" + s.recorded.size() + "\t" + s.skipped
+		 + "\t" + median(s.recorded) / 1000 + "\t" + median(s.replayed) / 1000
+		 + "\t" + r / 1000 + "\t" + p / 1000 + "\t" + delta(r, p)
+		 + "\t" + s.changed + "\t" + s.differing);
+	}
+	System.out.println("total\t\t\t\t\t" + recorded / 1000 + "\t"
+			   + replayed / 1000 + "\t" + delta(recorded, replayed));
+    }
+
+    /**
+     * Describe the relative difference between two durations.
+     *
+     * @param recorded the recorded duration
+     * @param replayed the replayed duration
+     * @return the signed difference in percent
+     */
+    private static String delta
+	(final long recorded,
+	 final long replayed)
+    {
+	if(recorded == 0)
+	    return "-";
+	final long percent = (replayed - recorded) * 100 / recorded;
+	return ((percent > 0) ? "+" : "") + percent + "%";
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * @param args see the class documentation
+     * @throws Exception on fatal errors
+     */
+    public static void main
+	(final String[] args)
+	throws Exception
+    {
+	int warmup = 0;
+	boolean verbose = false;
+	String file = null;
+	final List<Class<?>> roots = new ArrayList<Class<?>>();
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-warmup") && i + 1 < args.length)
+		warmup = Integer.parseInt(args[++i]);
+	    else if(args[i].equals("-root") && i + 1 < args.length)
+		roots.add(Class.forName(args[++i]));
+	    else if(args[i].equals("-v"))
+		verbose = true;
+	    else
+		file = args[i];
+	}
+	if(file == null) {
+	    System.err.println
+		("usage: Replay [-warmup n] [-root class]... [-v] recording");
+	    System.exit(2);
+	}
+	final Replay replay = new Replay(new Recording(new File(file)), roots);
+	for(int i = 0; i < warmup; i++)
+	    replay.run(false, false);
+	replay.run(true, verbose);
+	replay.report();
+    }
+}
@@ -0,0 +1,31 @@
+package android.app;
+
+import android.content.Context;
+import android.view.Window;
+
+/**
+ * Desktop stand-in for the Android <code>Activity</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Activity
+    extends Context
+{
+    /**
+     * Activity window
+     */
+    private Window window;
+
+    public Window getWindow
+	()
+    {
+	return window;
+    }
+
+    public void setWindow
+	(final Window window)
+    {
+	this.window = window;
+    }
+}
@@ -0,0 +1,53 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Desktop stand-in for the Android <code>Context</code>.
+ *
+ * Private directories are created below the directory given by the
+ * <code>fino.data</code> system property, or the temporary directory.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Context
+{
+    public static final int MODE_PRIVATE = 0;
+
+    /**
+     * Application data directory
+     */
+    private final File dataDir = new File
+	(System.getProperty("fino.data", System.getProperty("java.io.tmpdir")),
+	 "fino-replay");
+
+    public File getDir
+	(final String name,
+	 final int mode)
+    {
+	final File dir = new File(dataDir, "app_" + name);
+	dir.mkdirs();
+	return dir;
+    }
+
+    public File getFilesDir
+	()
+    {
+	final File dir = new File(dataDir, "files");
+	dir.mkdirs();
+	return dir;
+    }
+
+    public ClassLoader getClassLoader
+	()
+    {
+	return getClass().getClassLoader();
+    }
+
+    public Context getApplicationContext
+	()
+    {
+	return this;
+    }
+}
@@ -0,0 +1,34 @@
+package android.content.res;
+
+/**
+ * Desktop stand-in for the Android <code>Resources</code>, without any
+ * resource.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Resources
+{
+    public static class NotFoundException
+	extends RuntimeException
+    {
+	public NotFoundException
+	    (final String name)
+	{
+	    super(name);
+	}
+    }
+
+    public String getResourceName
+	(final int id)
+    {
+	throw new NotFoundException("Unable to find resource ID #0x"
+				    + Integer.toHexString(id));
+    }
+
+    public String getResourceEntryName
+	(final int id)
+    {
+	return getResourceName(id);
+    }
+}
@@ -0,0 +1,114 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>Binder</code>.
+ *
+ * Transactions are plain local calls to <code>onTransact</code>, on the
+ * calling thread. Local binders never die.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Binder
+    implements IBinder
+{
+    /**
+     * Local interface
+     */
+    private IInterface owner;
+
+    /**
+     * Local interface descriptor
+     */
+    private String descriptor;
+
+    public static int getCallingPid
+	()
+    {
+	return 0;
+    }
+
+    public static int getCallingUid
+	()
+    {
+	return 0;
+    }
+
+    public void attachInterface
+	(final IInterface owner,
+	 final String descriptor)
+    {
+	this.owner = owner;
+	this.descriptor = descriptor;
+    }
+
+    public String getInterfaceDescriptor
+	()
+    {
+	return descriptor;
+    }
+
+    public boolean pingBinder
+	()
+    {
+	return true;
+    }
+
+    public boolean isBinderAlive
+	()
+    {
+	return true;
+    }
+
+    public IInterface queryLocalInterface
+	(final String descriptor)
+    {
+	return (this.descriptor != null && this.descriptor.equals(descriptor)) ?
+	    owner : null;
+    }
+
+    protected boolean onTransact
+	(final int code,
+	 final Parcel data,
+	 final Parcel reply,
+	 final int flags)
+	throws RemoteException
+    {
+	if(code == INTERFACE_TRANSACTION) {
+	    reply.writeString(getInterfaceDescriptor());
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Run a transaction, reading the request from its start.
+     */
+    public final boolean transact
+	(final int code,
+	 final Parcel data,
+	 final Parcel reply,
+	 final int flags)
+	throws RemoteException
+    {
+	if(data != null)
+	    data.setDataPosition(0);
+	final boolean result = onTransact(code, data, reply, flags);
+	if(reply != null)
+	    reply.setDataPosition(0);
+	return result;
+    }
+
+    public void linkToDeath
+	(final DeathRecipient recipient,
+	 final int flags)
+    {
+    }
+
+    public boolean unlinkToDeath
+	(final DeathRecipient recipient,
+	 final int flags)
+    {
+	return true;
+    }
+}
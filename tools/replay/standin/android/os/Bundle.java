@@ -0,0 +1,286 @@
+package android.os;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Desktop stand-in for the Android <code>Bundle</code>.
+ *
+ * Only the value types returned by the inspection service are supported.
+ * Bundles are flattened as on devices: the data length, the "BNDL" magic,
+ * then the entry count and every key followed by a typed value.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class Bundle
+    implements Parcelable
+{
+    /**
+     * Flattened bundle magic
+     */
+    private static final int MAGIC = 0x4c444e42;
+
+    /**
+     * Value type tags, as written by <code>Parcel.writeValue</code>
+     */
+    private static final int VAL_NULL = -1;
+    private static final int VAL_STRING = 0;
+    private static final int VAL_INTEGER = 1;
+    private static final int VAL_LONG = 6;
+    private static final int VAL_BOOLEAN = 9;
+    private static final int VAL_STRINGARRAY = 14;
+    private static final int VAL_INTARRAY = 18;
+    private static final int VAL_LONGARRAY = 19;
+
+    public static final Parcelable.Creator<Bundle> CREATOR
+	= new Parcelable.Creator<Bundle>() {
+	    public Bundle createFromParcel(final Parcel source) {
+		final Bundle result = new Bundle();
+		result.readFromParcel(source);
+		return result;
+	    }
+
+	    public Bundle[] newArray(final int size) {
+		return new Bundle[size];
+	    }
+	};
+
+    /**
+     * Values, by key
+     */
+    private final Map<String, Object> values
+	= new LinkedHashMap<String, Object>();
+
+    public Set<String> keySet
+	()
+    {
+	return values.keySet();
+    }
+
+    public boolean containsKey
+	(final String key)
+    {
+	return values.containsKey(key);
+    }
+
+    public Object get
+	(final String key)
+    {
+	return values.get(key);
+    }
+
+    public void putInt
+	(final String key,
+	 final int value)
+    {
+	values.put(key, value);
+    }
+
+    public int getInt
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof Integer) ? (Integer)o : 0;
+    }
+
+    public void putLong
+	(final String key,
+	 final long value)
+    {
+	values.put(key, value);
+    }
+
+    public long getLong
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof Long) ? (Long)o : 0;
+    }
+
+    public void putBoolean
+	(final String key,
+	 final boolean value)
+    {
+	values.put(key, value);
+    }
+
+    public boolean getBoolean
+	(final String key)
+    {
+	return Boolean.TRUE.equals(values.get(key));
+    }
+
+    public void putString
+	(final String key,
+	 final String value)
+    {
+	values.put(key, value);
+    }
+
+    public String getString
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof String) ? (String)o : null;
+    }
+
+    public void putIntArray
+	(final String key,
+	 final int[] value)
+    {
+	values.put(key, value);
+    }
+
+    public int[] getIntArray
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof int[]) ? (int[])o : null;
+    }
+
+    public void putLongArray
+	(final String key,
+	 final long[] value)
+    {
+	values.put(key, value);
+    }
+
+    public long[] getLongArray
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof long[]) ? (long[])o : null;
+    }
+
+    public void putStringArray
+	(final String key,
+	 final String[] value)
+    {
+	values.put(key, value);
+    }
+
+    public String[] getStringArray
+	(final String key)
+    {
+	final Object o = values.get(key);
+	return (o instanceof String[]) ? (String[])o : null;
+    }
+
+    public int describeContents
+	()
+    {
+	return 0;
+    }
+
+    public void writeToParcel
+	(final Parcel dest,
+	 final int flags)
+    {
+	if(values.isEmpty()) {
+	    dest.writeInt(0);
+	    return;
+	}
+	final int lengthPosition = dest.dataPosition();
+	dest.writeInt(-1);
+	dest.writeInt(MAGIC);
+	final int start = dest.dataPosition();
+	dest.writeInt(values.size());
+	for(final Map.Entry<String, Object> e: values.entrySet()) {
+	    dest.writeString(e.getKey());
+	    writeValue(dest, e.getValue());
+	}
+	final int end = dest.dataPosition();
+	dest.setDataPosition(lengthPosition);
+	dest.writeInt(end - start);
+	dest.setDataPosition(end);
+    }
+
+    public void readFromParcel
+	(final Parcel source)
+    {
+	values.clear();
+	final int length = source.readInt();
+	if(length <= 0)
+	    return;
+	if(source.readInt() != MAGIC)
+	    throw new IllegalStateException("Bad magic number for Bundle");
+	final int count = source.readInt();
+	for(int i = 0; i < count; i++) {
+	    final String key = source.readString();
+	    values.put(key, readValue(source));
+	}
+    }
+
+    /**
+     * Write a typed value.
+     *
+     * @param dest the parcel
+     * @param v the value
+     */
+    private static void writeValue
+	(final Parcel dest,
+	 final Object v)
+    {
+	if(v == null) {
+	    dest.writeInt(VAL_NULL);
+	} else if(v instanceof String) {
+	    dest.writeInt(VAL_STRING);
+	    dest.writeString((String)v);
+	} else if(v instanceof Integer) {
+	    dest.writeInt(VAL_INTEGER);
+	    dest.writeInt((Integer)v);
+	} else if(v instanceof Long) {
+	    dest.writeInt(VAL_LONG);
+	    dest.writeLong((Long)v);
+	} else if(v instanceof Boolean) {
+	    dest.writeInt(VAL_BOOLEAN);
+	    dest.writeInt(((Boolean)v) ? 1 : 0);
+	} else if(v instanceof String[]) {
+	    dest.writeInt(VAL_STRINGARRAY);
+	    dest.writeStringArray((String[])v);
+	} else if(v instanceof int[]) {
+	    dest.writeInt(VAL_INTARRAY);
+	    dest.writeIntArray((int[])v);
+	} else if(v instanceof long[]) {
+	    dest.writeInt(VAL_LONGARRAY);
+	    dest.writeLongArray((long[])v);
+	} else {
+	    throw new RuntimeException("Parcel: unable to marshal value " + v);
+	}
+    }
+
+    /**
+     * Read a typed value.
+     *
+     * @param source the parcel
+     * @return the value
+     */
+    private static Object readValue
+	(final Parcel source)
+    {
+	final int type = source.readInt();
+	switch(type) {
+	case VAL_NULL:
+	    return null;
+	case VAL_STRING:
+	    return source.readString();
+	case VAL_INTEGER:
+	    return source.readInt();
+	case VAL_LONG:
+	    return source.readLong();
+	case VAL_BOOLEAN:
+	    return source.readInt() != 0;
+	case VAL_STRINGARRAY:
+	    return source.createStringArray();
+	case VAL_INTARRAY:
+	    return source.createIntArray();
+	case VAL_LONGARRAY:
+	    return source.createLongArray();
+	default:
+	    throw new RuntimeException("Parcel: unmarshalling unknown type code "
+				       + type);
+	}
+    }
+}
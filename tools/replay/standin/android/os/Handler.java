@@ -0,0 +1,55 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>Handler</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Handler
+{
+    /**
+     * Target looper
+     */
+    private final Looper looper;
+
+    public Handler
+	(final Looper looper)
+    {
+	this.looper = looper;
+    }
+
+    public Looper getLooper
+	()
+    {
+	return looper;
+    }
+
+    public final boolean post
+	(final Runnable r)
+    {
+	looper.post(this, r, SystemClock.uptimeMillis());
+	return true;
+    }
+
+    public final boolean postDelayed
+	(final Runnable r,
+	 final long delayMillis)
+    {
+	looper.post(this, r, SystemClock.uptimeMillis() + delayMillis);
+	return true;
+    }
+
+    public final void removeCallbacks
+	(final Runnable r)
+    {
+	looper.remove(this, r);
+    }
+
+    public String toString
+	()
+    {
+	return "Handler (" + getClass().getName() + ") {"
+	    + Integer.toHexString(System.identityHashCode(this)) + "}";
+    }
+}
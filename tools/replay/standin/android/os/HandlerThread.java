@@ -0,0 +1,73 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>HandlerThread</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class HandlerThread
+    extends Thread
+{
+    /**
+     * Looper of the thread, set once running
+     */
+    private Looper looper = null;
+
+    public HandlerThread
+	(final String name)
+    {
+	super(name);
+    }
+
+    public HandlerThread
+	(final String name,
+	 final int priority)
+    {
+	super(name);
+    }
+
+    public void run
+	()
+    {
+	final Looper l = new Looper(this);
+	synchronized(this) {
+	    looper = l;
+	    notifyAll();
+	}
+	l.loop();
+    }
+
+    /**
+     * Get the looper of the thread, waiting for the thread to start.
+     *
+     * @return the looper, or <code>null</code> if the thread is not alive
+     */
+    public Looper getLooper
+	()
+    {
+	if(!isAlive())
+	    return null;
+	synchronized(this) {
+	    while(isAlive() && looper == null) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    return null;
+		}
+	    }
+	    return looper;
+	}
+    }
+
+    public boolean quit
+	()
+    {
+	final Looper l = getLooper();
+	if(l == null)
+	    return false;
+	l.quit();
+	return true;
+    }
+}
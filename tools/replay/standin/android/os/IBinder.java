@@ -0,0 +1,53 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>IBinder</code> interface.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public interface IBinder
+{
+    int FIRST_CALL_TRANSACTION = 0x00000001;
+    int LAST_CALL_TRANSACTION = 0x00ffffff;
+    int INTERFACE_TRANSACTION = ('_' << 24) | ('N' << 16) | ('T' << 8) | 'F';
+    int FLAG_ONEWAY = 0x00000001;
+
+    /**
+     * Notification of a remote binder death.
+     */
+    interface DeathRecipient
+    {
+	void binderDied
+	    ();
+    }
+
+    String getInterfaceDescriptor
+	()
+	throws RemoteException;
+
+    boolean pingBinder
+	();
+
+    boolean isBinderAlive
+	();
+
+    IInterface queryLocalInterface
+	(String descriptor);
+
+    boolean transact
+	(int code,
+	 Parcel data,
+	 Parcel reply,
+	 int flags)
+	throws RemoteException;
+
+    void linkToDeath
+	(DeathRecipient recipient,
+	 int flags)
+	throws RemoteException;
+
+    boolean unlinkToDeath
+	(DeathRecipient recipient,
+	 int flags);
+}
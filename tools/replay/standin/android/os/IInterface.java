@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>IInterface</code> interface.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public interface IInterface
+{
+    IBinder asBinder
+	();
+}
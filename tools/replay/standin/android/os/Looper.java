@@ -0,0 +1,211 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import android.util.Printer;
+
+/**
+ * Desktop stand-in for the Android <code>Looper</code>.
+ *
+ * Loopers run posted callbacks in order of their due time, logging each
+ * dispatch to the message logging printer in the format of device loopers.
+ * The main looper is a daemon thread started on first use.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class Looper
+{
+    /**
+     * Posted callback
+     */
+    private static final class Entry
+	implements Comparable<Entry>
+    {
+	final Handler handler;
+	final Runnable callback;
+	final long when;
+	final long sequence;
+
+	Entry
+	    (final Handler handler,
+	     final Runnable callback,
+	     final long when,
+	     final long sequence)
+	{
+	    this.handler = handler;
+	    this.callback = callback;
+	    this.when = when;
+	    this.sequence = sequence;
+	}
+
+	public int compareTo
+	    (final Entry o)
+	{
+	    if(when != o.when)
+		return (when < o.when) ? -1 : 1;
+	    return (sequence < o.sequence) ? -1
+		: ((sequence == o.sequence) ? 0 : 1);
+	}
+    }
+
+    /**
+     * Main looper, started on first use
+     */
+    private static Looper main;
+
+    /**
+     * Pending callbacks, by due time
+     */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+
+    /**
+     * Number of posted callbacks, to keep posting order
+     */
+    private long posted = 0;
+
+    /**
+     * Whether the looper was asked to quit
+     */
+    private boolean quitting = false;
+
+    /**
+     * Message logging printer, may be <code>null</code>, named as on
+     * devices so that it may be read reflectively
+     */
+    private volatile Printer mLogging = null;
+
+    /**
+     * Looper thread
+     */
+    private final Thread thread;
+
+    /**
+     * Looper running on the given thread, see <code>loop</code>.
+     *
+     * @param thread the thread
+     */
+    Looper
+	(final Thread thread)
+    {
+	this.thread = thread;
+    }
+
+    public static synchronized Looper getMainLooper
+	()
+    {
+	if(main == null) {
+	    final Thread t = new Thread("main") {
+		    public void run() {
+			getMainLooper().loop();
+		    }
+		};
+	    t.setDaemon(true);
+	    main = new Looper(t);
+	    t.start();
+	}
+	return main;
+    }
+
+    public static Looper myLooper
+	()
+    {
+	final Looper m = getMainLooper();
+	return (Thread.currentThread() == m.thread) ? m : null;
+    }
+
+    public Thread getThread
+	()
+    {
+	return thread;
+    }
+
+    public void setMessageLogging
+	(final Printer printer)
+    {
+	mLogging = printer;
+    }
+
+    public synchronized void quit
+	()
+    {
+	quitting = true;
+	queue.clear();
+	notifyAll();
+    }
+
+    /**
+     * Run callbacks until asked to quit, on the looper thread.
+     */
+    void loop
+	()
+    {
+	for(;;) {
+	    final Entry e;
+	    synchronized(this) {
+		try {
+		    for(;;) {
+			if(quitting)
+			    return;
+			final Entry head = queue.peek();
+			final long now = SystemClock.uptimeMillis();
+			if(head != null && head.when <= now) {
+			    e = queue.poll();
+			    break;
+			}
+			wait((head == null) ? 0 : head.when - now);
+		    }
+		} catch (InterruptedException x) {
+		    return;
+		}
+	    }
+	    final Printer p = mLogging;
+	    if(p != null)
+		p.println(">>>>> Dispatching to " + e.handler + " "
+			  + e.callback + ": 0");
+	    try {
+		e.callback.run();
+	    } catch (RuntimeException x) {
+		x.printStackTrace();
+	    }
+	    if(p != null)
+		p.println("<<<<< Finished to " + e.handler + " " + e.callback);
+	}
+    }
+
+    /**
+     * Queue a callback.
+     *
+     * @param handler the posting handler
+     * @param r the callback
+     * @param when the due time, in milliseconds of uptime
+     */
+    synchronized void post
+	(final Handler handler,
+	 final Runnable r,
+	 final long when)
+    {
+	if(quitting)
+	    return;
+	queue.add(new Entry(handler, r, when, posted++));
+	notifyAll();
+    }
+
+    /**
+     * Remove pending callbacks.
+     *
+     * @param handler the posting handler
+     * @param r the callback
+     */
+    synchronized void remove
+	(final Handler handler,
+	 final Runnable r)
+    {
+	for(final Iterator<Entry> i = queue.iterator(); i.hasNext();) {
+	    final Entry e = i.next();
+	    if(e.handler == handler && e.callback == r)
+		i.remove();
+	}
+    }
+}
@@ -0,0 +1,617 @@
+package android.os;
+
+import java.util.ArrayList;
+
+/**
+ * Desktop stand-in for the Android <code>Parcel</code>.
+ *
+ * Data is laid out as the native parcel does on devices: little endian,
+ * 32-bit aligned, with strings as UTF-16 and a length prefix, so that
+ * parcels marshalled on a device may be unmarshalled and read here.
+ *
+ * Binder objects are kept aside and only referenced by index in the data;
+ * as on devices, parcels holding binder objects cannot be marshalled.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class Parcel
+{
+    /**
+     * Exception codes, as written by <code>writeException</code>
+     */
+    private static final int EX_SECURITY = -1;
+    private static final int EX_BAD_PARCELABLE = -2;
+    private static final int EX_ILLEGAL_ARGUMENT = -3;
+    private static final int EX_NULL_POINTER = -4;
+    private static final int EX_ILLEGAL_STATE = -5;
+    private static final int EX_UNSUPPORTED_OPERATION = -7;
+
+    /**
+     * Raw data
+     */
+    private byte[] data = new byte[64];
+
+    /**
+     * Data size
+     */
+    private int size = 0;
+
+    /**
+     * Read and write position
+     */
+    private int position = 0;
+
+    /**
+     * Flattened binder objects
+     */
+    private final ArrayList<IBinder> objects = new ArrayList<IBinder>();
+
+    /**
+     * Use <code>obtain</code>
+     */
+    private Parcel
+	()
+    {
+    }
+
+    /**
+     * Get an empty parcel.
+     *
+     * @return the parcel
+     */
+    public static Parcel obtain
+	()
+    {
+	return new Parcel();
+    }
+
+    /**
+     * Release a parcel, nothing to do here.
+     */
+    public void recycle
+	()
+    {
+    }
+
+    /**
+     * Get the data size.
+     *
+     * @return the size in bytes
+     */
+    public int dataSize
+	()
+    {
+	return size;
+    }
+
+    /**
+     * Get the remaining data size.
+     *
+     * @return the size in bytes
+     */
+    public int dataAvail
+	()
+    {
+	return size - position;
+    }
+
+    /**
+     * Get the current position.
+     *
+     * @return the position in bytes
+     */
+    public int dataPosition
+	()
+    {
+	return position;
+    }
+
+    /**
+     * Move the current position.
+     *
+     * @param pos the position in bytes
+     */
+    public void setDataPosition
+	(final int pos)
+    {
+	position = pos;
+    }
+
+    /**
+     * Get the raw data.
+     *
+     * @return a copy of the data
+     * @throws RuntimeException if the parcel holds binder objects
+     */
+    public byte[] marshall
+	()
+    {
+	if(!objects.isEmpty())
+	    throw new RuntimeException
+		("Tried to marshall a Parcel that contained Binder objects.");
+	final byte[] result = new byte[size];
+	System.arraycopy(data, 0, result, 0, size);
+	return result;
+    }
+
+    /**
+     * Replace the data with raw data.
+     *
+     * @param bytes the raw data
+     * @param offset the data offset
+     * @param length the data length
+     */
+    public void unmarshall
+	(final byte[] bytes,
+	 final int offset,
+	 final int length)
+    {
+	data = new byte[Math.max(length, 64)];
+	System.arraycopy(bytes, offset, data, 0, length);
+	size = length;
+	position = length;
+	objects.clear();
+    }
+
+    /**
+     * Append raw data from another parcel, as the binder driver copies
+     * transactions.
+     *
+     * Binder objects keep their index, so the destination must not hold
+     * binder objects already.
+     *
+     * @param parcel the source parcel
+     * @param offset the data offset
+     * @param length the data length
+     */
+    public void appendFrom
+	(final Parcel parcel,
+	 final int offset,
+	 final int length)
+    {
+	if(!objects.isEmpty() && !parcel.objects.isEmpty())
+	    throw new IllegalStateException("cannot merge binder objects");
+	final int at = reserve(length);
+	System.arraycopy(parcel.data, offset, data, at, length);
+	objects.addAll(parcel.objects);
+    }
+
+    /**
+     * Reserve room at the current position.
+     *
+     * @param length the number of bytes to write
+     * @return the position to write at
+     */
+    private int reserve
+	(final int length)
+    {
+	final int at = position;
+	final int end = at + ((length + 3) & ~3);
+	if(end > data.length) {
+	    final byte[] grown = new byte[Math.max(end, data.length * 2)];
+	    System.arraycopy(data, 0, grown, 0, size);
+	    data = grown;
+	}
+	position = end;
+	size = Math.max(size, end);
+	return at;
+    }
+
+    /**
+     * Consume data at the current position.
+     *
+     * @param length the number of bytes to read
+     * @return the position to read at
+     */
+    private int consume
+	(final int length)
+    {
+	final int at = position;
+	final int end = at + ((length + 3) & ~3);
+	if(end > size)
+	    throw new RuntimeException("Parcel underflow at " + at);
+	position = end;
+	return at;
+    }
+
+    public void writeInt
+	(final int v)
+    {
+	final int at = reserve(4);
+	data[at] = (byte)v;
+	data[at + 1] = (byte)(v >> 8);
+	data[at + 2] = (byte)(v >> 16);
+	data[at + 3] = (byte)(v >> 24);
+    }
+
+    public int readInt
+	()
+    {
+	if(position + 4 > size) {
+	    /* Native parcels read zero past the end */
+	    position = size;
+	    return 0;
+	}
+	final int at = consume(4);
+	return (data[at] & 0xff) | (data[at + 1] & 0xff) << 8
+	    | (data[at + 2] & 0xff) << 16 | (data[at + 3] & 0xff) << 24;
+    }
+
+    public void writeLong
+	(final long v)
+    {
+	writeInt((int)v);
+	writeInt((int)(v >>> 32));
+    }
+
+    public long readLong
+	()
+    {
+	final long low = readInt() & 0xffffffffL;
+	return low | ((long)readInt() << 32);
+    }
+
+    public void writeFloat
+	(final float v)
+    {
+	writeInt(Float.floatToRawIntBits(v));
+    }
+
+    public float readFloat
+	()
+    {
+	return Float.intBitsToFloat(readInt());
+    }
+
+    public void writeDouble
+	(final double v)
+    {
+	writeLong(Double.doubleToRawLongBits(v));
+    }
+
+    public double readDouble
+	()
+    {
+	return Double.longBitsToDouble(readLong());
+    }
+
+    public void writeByte
+	(final byte v)
+    {
+	writeInt(v);
+    }
+
+    public byte readByte
+	()
+    {
+	return (byte)readInt();
+    }
+
+    public void writeString
+	(final String s)
+    {
+	if(s == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(s.length());
+	final int at = reserve((s.length() + 1) * 2);
+	for(int i = 0; i < s.length(); i++) {
+	    data[at + 2 * i] = (byte)s.charAt(i);
+	    data[at + 2 * i + 1] = (byte)(s.charAt(i) >> 8);
+	}
+	data[at + 2 * s.length()] = 0;
+	data[at + 2 * s.length() + 1] = 0;
+    }
+
+    public String readString
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final int at = consume((length + 1) * 2);
+	final char[] chars = new char[length];
+	for(int i = 0; i < length; i++)
+	    chars[i] = (char)((data[at + 2 * i] & 0xff)
+			      | (data[at + 2 * i + 1] & 0xff) << 8);
+	return new String(chars);
+    }
+
+    public void writeStrongBinder
+	(final IBinder b)
+    {
+	if(b == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(objects.size());
+	objects.add(b);
+    }
+
+    public IBinder readStrongBinder
+	()
+    {
+	final int index = readInt();
+	return (index >= 0 && index < objects.size()) ? objects.get(index) : null;
+    }
+
+    public void writeInterfaceToken
+	(final String descriptor)
+    {
+	/* Strict mode policy */
+	writeInt(0);
+	writeString(descriptor);
+    }
+
+    /**
+     * Check the interface token of a request.
+     *
+     * Depending on the device version, the token is preceded by one to
+     * three header words, which are skipped.
+     *
+     * @param descriptor the expected interface descriptor
+     * @throws SecurityException if the token does not match
+     */
+    public void enforceInterface
+	(final String descriptor)
+    {
+	final int start = position;
+	for(int words = 1; words <= 3; words++) {
+	    position = start + 4 * words;
+	    try {
+		if(descriptor.equals(readString()))
+		    return;
+	    } catch (RuntimeException e) {
+		/* Not a string at this position */
+	    }
+	}
+	position = start;
+	throw new SecurityException
+	    ("Binder invocation to an incorrect interface");
+    }
+
+    public void writeNoException
+	()
+    {
+	writeInt(0);
+    }
+
+    public void writeException
+	(final Exception e)
+    {
+	int code = 0;
+	if(e instanceof SecurityException)
+	    code = EX_SECURITY;
+	else if(e instanceof IllegalArgumentException)
+	    code = EX_ILLEGAL_ARGUMENT;
+	else if(e instanceof NullPointerException)
+	    code = EX_NULL_POINTER;
+	else if(e instanceof IllegalStateException)
+	    code = EX_ILLEGAL_STATE;
+	else if(e instanceof UnsupportedOperationException)
+	    code = EX_UNSUPPORTED_OPERATION;
+	if(code == 0)
+	    throw (e instanceof RuntimeException) ?
+		(RuntimeException)e : new RuntimeException(e);
+	writeInt(code);
+	writeString(e.getMessage());
+    }
+
+    public void readException
+	()
+    {
+	final int code = readInt();
+	if(code == 0)
+	    return;
+	final String message = readString();
+	switch(code) {
+	case EX_SECURITY:
+	    throw new SecurityException(message);
+	case EX_BAD_PARCELABLE:
+	case EX_ILLEGAL_ARGUMENT:
+	    throw new IllegalArgumentException(message);
+	case EX_NULL_POINTER:
+	    throw new NullPointerException(message);
+	case EX_ILLEGAL_STATE:
+	    throw new IllegalStateException(message);
+	case EX_UNSUPPORTED_OPERATION:
+	    throw new UnsupportedOperationException(message);
+	default:
+	    throw new RuntimeException("Unknown exception code: " + code
+				       + " msg " + message);
+	}
+    }
+
+    public void writeByteArray
+	(final byte[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	final int at = reserve(v.length);
+	System.arraycopy(v, 0, data, at, v.length);
+    }
+
+    public byte[] createByteArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final byte[] result = new byte[length];
+	System.arraycopy(data, consume(length), result, 0, length);
+	return result;
+    }
+
+    public void writeBooleanArray
+	(final boolean[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final boolean b: v)
+	    writeInt(b ? 1 : 0);
+    }
+
+    public boolean[] createBooleanArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final boolean[] result = new boolean[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readInt() != 0;
+	return result;
+    }
+
+    public void writeCharArray
+	(final char[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final char c: v)
+	    writeInt(c);
+    }
+
+    public char[] createCharArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final char[] result = new char[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = (char)readInt();
+	return result;
+    }
+
+    public void writeIntArray
+	(final int[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final int i: v)
+	    writeInt(i);
+    }
+
+    public int[] createIntArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final int[] result = new int[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readInt();
+	return result;
+    }
+
+    public void writeLongArray
+	(final long[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final long l: v)
+	    writeLong(l);
+    }
+
+    public long[] createLongArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final long[] result = new long[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readLong();
+	return result;
+    }
+
+    public void writeFloatArray
+	(final float[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final float f: v)
+	    writeFloat(f);
+    }
+
+    public float[] createFloatArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final float[] result = new float[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readFloat();
+	return result;
+    }
+
+    public void writeDoubleArray
+	(final double[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final double d: v)
+	    writeDouble(d);
+    }
+
+    public double[] createDoubleArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final double[] result = new double[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readDouble();
+	return result;
+    }
+
+    public void writeStringArray
+	(final String[] v)
+    {
+	if(v == null) {
+	    writeInt(-1);
+	    return;
+	}
+	writeInt(v.length);
+	for(final String s: v)
+	    writeString(s);
+    }
+
+    public String[] createStringArray
+	()
+    {
+	final int length = readInt();
+	if(length < 0)
+	    return null;
+	final String[] result = new String[length];
+	for(int i = 0; i < length; i++)
+	    result[i] = readString();
+	return result;
+    }
+}
@@ -0,0 +1,28 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>Parcelable</code> interface.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public interface Parcelable
+{
+    int PARCELABLE_WRITE_RETURN_VALUE = 0x0001;
+
+    interface Creator<T>
+    {
+	T createFromParcel
+	    (Parcel source);
+
+	T[] newArray
+	    (int size);
+    }
+
+    int describeContents
+	();
+
+    void writeToParcel
+	(Parcel dest,
+	 int flags);
+}
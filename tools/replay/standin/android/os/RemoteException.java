@@ -0,0 +1,23 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>RemoteException</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class RemoteException
+    extends Exception
+{
+    public RemoteException
+	()
+    {
+	super();
+    }
+
+    public RemoteException
+	(final String message)
+    {
+	super(message);
+    }
+}
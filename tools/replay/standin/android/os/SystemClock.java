@@ -0,0 +1,36 @@
+package android.os;
+
+/**
+ * Desktop stand-in for the Android <code>SystemClock</code>.
+ *
+ * Every clock is the monotonic JVM clock, which does not distinguish uptime
+ * from time spent in deep sleep.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class SystemClock
+{
+    private SystemClock
+	()
+    {
+    }
+
+    public static long uptimeMillis
+	()
+    {
+	return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime
+	()
+    {
+	return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtimeNanos
+	()
+    {
+	return System.nanoTime();
+    }
+}
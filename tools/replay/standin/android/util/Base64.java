@@ -0,0 +1,68 @@
+package android.util;
+
+/**
+ * Desktop stand-in for the Android <code>Base64</code>, decoding only.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class Base64
+{
+    public static final int DEFAULT = 0;
+
+    private static final String ALPHABET =
+	"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private Base64
+	()
+    {
+    }
+
+    /**
+     * Decode base64 data, ignoring whitespace and padding.
+     *
+     * @param s the encoded data
+     * @param flags ignored
+     * @return the decoded data
+     * @throws IllegalArgumentException on invalid characters
+     */
+    public static byte[] decode
+	(final String s,
+	 final int flags)
+    {
+	final byte[] buffer = new byte[s.length() * 3 / 4 + 3];
+	int length = 0;
+	int bits = 0;
+	int count = 0;
+	for(int i = 0; i < s.length(); i++) {
+	    final char c = s.charAt(i);
+	    if(c == '=' || Character.isWhitespace(c))
+		continue;
+	    int v = ALPHABET.indexOf(c);
+	    if(c == '-')
+		v = 62;
+	    else if(c == '_')
+		v = 63;
+	    if(v < 0)
+		throw new IllegalArgumentException("bad base-64");
+	    bits = (bits << 6) | v;
+	    if(++count == 4) {
+		buffer[length++] = (byte)(bits >> 16);
+		buffer[length++] = (byte)(bits >> 8);
+		buffer[length++] = (byte)bits;
+		bits = 0;
+		count = 0;
+	    }
+	}
+	if(count == 3) {
+	    buffer[length++] = (byte)(bits >> 10);
+	    buffer[length++] = (byte)(bits >> 2);
+	}
+	else if(count == 2) {
+	    buffer[length++] = (byte)(bits >> 4);
+	}
+	final byte[] result = new byte[length];
+	System.arraycopy(buffer, 0, result, 0, length);
+	return result;
+    }
+}
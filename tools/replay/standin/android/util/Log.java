@@ -0,0 +1,72 @@
+package android.util;
+
+/**
+ * Desktop stand-in for the Android <code>Log</code>, writing to the
+ * standard error.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public final class Log
+{
+    private Log
+	()
+    {
+    }
+
+    private static int println
+	(final char level,
+	 final String tag,
+	 final String message,
+	 final Throwable t)
+    {
+	System.err.println(level + "/" + tag + ": " + message);
+	if(t != null)
+	    t.printStackTrace();
+	return 0;
+    }
+
+    public static int d
+	(final String tag,
+	 final String message)
+    {
+	return println('D', tag, message, null);
+    }
+
+    public static int i
+	(final String tag,
+	 final String message)
+    {
+	return println('I', tag, message, null);
+    }
+
+    public static int w
+	(final String tag,
+	 final String message)
+    {
+	return println('W', tag, message, null);
+    }
+
+    public static int w
+	(final String tag,
+	 final String message,
+	 final Throwable t)
+    {
+	return println('W', tag, message, t);
+    }
+
+    public static int e
+	(final String tag,
+	 final String message)
+    {
+	return println('E', tag, message, null);
+    }
+
+    public static int e
+	(final String tag,
+	 final String message,
+	 final Throwable t)
+    {
+	return println('E', tag, message, t);
+    }
+}
@@ -0,0 +1,13 @@
+package android.util;
+
+/**
+ * Desktop stand-in for the Android <code>Printer</code> interface.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public interface Printer
+{
+    void println
+	(String x);
+}
@@ -0,0 +1,135 @@
+package android.view;
+
+import android.content.res.Resources;
+
+/**
+ * Desktop stand-in for the Android <code>View</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class View
+{
+    public static final int NO_ID = -1;
+    public static final int VISIBLE = 0;
+
+    /**
+     * View parent, <code>null</code> for roots
+     */
+    ViewGroup parent;
+
+    /**
+     * View identifier
+     */
+    private int id = NO_ID;
+
+    /**
+     * Visibility
+     */
+    private int visibility = VISIBLE;
+
+    /**
+     * Bounds in the parent
+     */
+    private int left, top, right, bottom;
+
+    /**
+     * Shared empty resources
+     */
+    private static final Resources RESOURCES = new Resources();
+
+    public int getId
+	()
+    {
+	return id;
+    }
+
+    public void setId
+	(final int id)
+    {
+	this.id = id;
+    }
+
+    public int getVisibility
+	()
+    {
+	return visibility;
+    }
+
+    public void setVisibility
+	(final int visibility)
+    {
+	this.visibility = visibility;
+    }
+
+    public void layout
+	(final int l,
+	 final int t,
+	 final int r,
+	 final int b)
+    {
+	left = l;
+	top = t;
+	right = r;
+	bottom = b;
+    }
+
+    public int getLeft
+	()
+    {
+	return left;
+    }
+
+    public int getTop
+	()
+    {
+	return top;
+    }
+
+    public int getRight
+	()
+    {
+	return right;
+    }
+
+    public int getBottom
+	()
+    {
+	return bottom;
+    }
+
+    public void getLocationOnScreen
+	(final int[] location)
+    {
+	location[0] = left;
+	location[1] = top;
+	for(View p = parent; p != null; p = p.parent) {
+	    location[0] += p.left;
+	    location[1] += p.top;
+	}
+    }
+
+    public View getRootView
+	()
+    {
+	View v = this;
+	while(v.parent != null)
+	    v = v.parent;
+	return v;
+    }
+
+    public boolean isShown
+	()
+    {
+	for(View v = this; v != null; v = v.parent)
+	    if(v.visibility != VISIBLE)
+		return false;
+	return true;
+    }
+
+    public Resources getResources
+	()
+    {
+	return RESOURCES;
+    }
+}
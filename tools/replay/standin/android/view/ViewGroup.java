@@ -0,0 +1,38 @@
+package android.view;
+
+import java.util.ArrayList;
+
+/**
+ * Desktop stand-in for the Android <code>ViewGroup</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class ViewGroup
+    extends View
+{
+    /**
+     * Children, in drawing order
+     */
+    private final ArrayList<View> children = new ArrayList<View>();
+
+    public void addView
+	(final View child)
+    {
+	child.parent = this;
+	children.add(child);
+    }
+
+    public int getChildCount
+	()
+    {
+	return children.size();
+    }
+
+    public View getChildAt
+	(final int index)
+    {
+	return (index >= 0 && index < children.size()) ?
+	    children.get(index) : null;
+    }
+}
@@ -0,0 +1,33 @@
+package android.view;
+
+/**
+ * Desktop stand-in for the Android <code>Window</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class Window
+{
+    /**
+     * Top-level view
+     */
+    private final View decor;
+
+    public Window
+	(final View decor)
+    {
+	this.decor = decor;
+    }
+
+    public View getDecorView
+	()
+    {
+	return decor;
+    }
+
+    public View peekDecorView
+	()
+    {
+	return decor;
+    }
+}
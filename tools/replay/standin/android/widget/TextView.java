@@ -0,0 +1,30 @@
+package android.widget;
+
+import android.view.View;
+
+/**
+ * Desktop stand-in for the Android <code>TextView</code>.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class TextView
+    extends View
+{
+    /**
+     * Displayed text
+     */
+    private CharSequence text = "";
+
+    public CharSequence getText
+	()
+    {
+	return text;
+    }
+
+    public void setText
+	(final CharSequence text)
+    {
+	this.text = text;
+    }
+}
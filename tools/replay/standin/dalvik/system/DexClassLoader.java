@@ -0,0 +1,23 @@
+package dalvik.system;
+
+/**
+ * Desktop stand-in for the Dalvik <code>DexClassLoader</code>.
+ *
+ * Dex files cannot be loaded on a desktop JVM, so only classes from the
+ * parent loader are found.
+ *
+ * @author <a href="mailto:p.jaury@sysdream.com">Pierre Jaury</a>
+ * @version 1.0
+ */
+public class DexClassLoader
+    extends ClassLoader
+{
+    public DexClassLoader
+	(final String dexPath,
+	 final String optimizedDirectory,
+	 final String librarySearchPath,
+	 final ClassLoader parent)
+    {
+	super(parent);
+    }
+}